@@ -29,6 +29,11 @@ public class TodoConverter {
             obj.setOrder(((Number)member.getValue()).intValue());
           }
           break;
+        case "rank":
+          if (member.getValue() instanceof String) {
+            obj.setRank((String)member.getValue());
+          }
+          break;
         case "title":
           if (member.getValue() instanceof String) {
             obj.setTitle((String)member.getValue());
@@ -39,6 +44,11 @@ public class TodoConverter {
             obj.setUrl((String)member.getValue());
           }
           break;
+        case "version":
+          if (member.getValue() instanceof Number) {
+            obj.setVersion(((Number)member.getValue()).intValue());
+          }
+          break;
       }
     }
   }
@@ -55,11 +65,17 @@ public class TodoConverter {
     if (obj.getOrder() != null) {
       json.put("order", obj.getOrder());
     }
+    if (obj.getRank() != null) {
+      json.put("rank", obj.getRank());
+    }
     if (obj.getTitle() != null) {
       json.put("title", obj.getTitle());
     }
     if (obj.getUrl() != null) {
       json.put("url", obj.getUrl());
     }
+    if (obj.getVersion() != null) {
+      json.put("version", obj.getVersion());
+    }
   }
 }
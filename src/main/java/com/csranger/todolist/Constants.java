@@ -11,6 +11,57 @@ public final class Constants {
     public static final String API_UPDATE = "/todos/:todoId";
     public static final String API_DELETE = "/todos/:todoId";
     public static final String API_DELETE_ALL = "/todos";
+    public static final String API_UPDATE_ALL = "/todos";
+
+    /**
+     * List scoped API Route：每个待办清单（租户）拥有独立的数据空间，上面的 /todos 路由等价于访问 DEFAULT_LIST_ID 清单
+     */
+    public static final String API_LIST_GET = "/lists/:listId/todos/:todoId";
+    public static final String API_LIST_LIST_ALL = "/lists/:listId/todos";
+    public static final String API_LIST_CREATE = "/lists/:listId/todos";
+    public static final String API_LIST_UPDATE = "/lists/:listId/todos/:todoId";
+    public static final String API_LIST_DELETE = "/lists/:listId/todos/:todoId";
+    public static final String API_LIST_DELETE_ALL = "/lists/:listId/todos";
+    public static final String API_LIST_UPDATE_ALL = "/lists/:listId/todos";
+
+    public static final String DEFAULT_LIST_ID = "default";
+    public static final int MAX_LIST_ID_LENGTH = 64;    // 与 JDBC list_id 列的宽度一致
+
+    /**
+     * NDJSON（每行一个 JSON）格式的流式导出/导入，用于备份以及在不同存储之间迁移数据
+     */
+    public static final String API_EXPORT = "/todos/_export";
+    public static final String API_IMPORT = "/todos/_import";
+    public static final String API_LIST_EXPORT = "/lists/:listId/todos/_export";
+    public static final String API_LIST_IMPORT = "/lists/:listId/todos/_import";
+
+    /**
+     * 按标题全文搜索待办事项：?q=关键词&limit=返回条数
+     */
+    public static final String API_SEARCH = "/todos/search";
+    public static final String API_LIST_SEARCH = "/lists/:listId/todos/search";
+
+    /**
+     * 移动待办事项：?after=前一个待办事项的 id&before=后一个待办事项的 id，省略其中一个表示移动到最前或最后
+     */
+    public static final String API_MOVE = "/todos/:todoId/move";
+    public static final String API_LIST_MOVE = "/lists/:listId/todos/:todoId/move";
+
+    /**
+     * 健康检查：live 表示进程存活（HTTP 服务已在监听），ready 表示存储已初始化、预热已完成，负载均衡器据此决定是否转发流量
+     */
+    public static final String API_HEALTH_LIVE = "/health/live";
+    public static final String API_HEALTH_READY = "/health/ready";
+
+    /**
+     * 最近保留的请求 trace（采样的以及慢请求）：?limit=返回条数&minMs=最小耗时
+     */
+    public static final String API_DEBUG_TRACES = "/debug/traces";
+
+    /**
+     * 启动预热时合成请求使用的清单，预热结束后清空
+     */
+    public static final String WARMUP_LIST_ID = "_warmup";
 
 
     /**
@@ -18,4 +69,12 @@ public final class Constants {
      **/
     public static final String REDIS_TODO_KEY = "VERT_TODO";
 
+    /**
+     * 每个清单对应一个独立的 hash：默认清单沿用原来的 REDIS_TODO_KEY（兼容已有数据），其他清单为 REDIS_TODO_KEY:listId
+     */
+    public static String redisTodoKey(String listId) {
+        if (listId == null || DEFAULT_LIST_ID.equals(listId)) return REDIS_TODO_KEY;
+        return REDIS_TODO_KEY + ":" + listId;
+    }
+
 }
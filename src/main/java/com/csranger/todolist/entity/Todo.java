@@ -8,6 +8,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 待办事项对象：数据实体对象 - Todo 实体:Todo 实体对象由序号id、标题title、次序order、地址url以及代表待办事项是否完成的一个标识complete组成
+ * 版本号 version 在每次写入时加一，用于乐观并发控制（If-Match / ETag）
+ * 排序键 rank 是分数索引键（见 OrderKeys），列表按 rank 排序，移动待办事项时只需改写它自己的 rank
  * 注解 @DataObject，这是用于生成JSON转换类的注解：被 @DataObject 注解的实体类需要满足以下条件：拥有一个拷贝构造函数以及一个接受一个 JsonObject 对象的构造函数。
  */
 
@@ -21,6 +23,8 @@ public class Todo {
     private Boolean completed;
     private Integer order;
     private String url;
+    private String rank;
+    private Integer version;
 
     // 5种构造器
     public Todo() {
@@ -32,6 +36,8 @@ public class Todo {
         this.completed = other.completed;
         this.order = other.order;
         this.url = other.url;
+        this.rank = other.rank;
+        this.version = other.version;
     }
 
     public Todo(int id, String title, Boolean completed, Integer order, String url) {
@@ -83,13 +89,16 @@ public class Todo {
         return value == null ? defaultValue : value;
     }
 
-    // merge 用于更新待办事项
+    // merge 用于更新待办事项：版本号保持为当前版本，由存储层在写入成功时加一
     public Todo merge(Todo todo) {
-        return new Todo(id,
+        Todo merged = new Todo(id,
                 getOrElse(todo.title, title),
                 getOrElse(todo.completed, completed),
                 getOrElse(todo.order, order),
                 url);
+        merged.rank = getOrElse(todo.rank, rank);
+        merged.version = version;
+        return merged;
     }
 
     // id, title, order, url 的 setter getter
@@ -125,6 +134,26 @@ public class Todo {
         this.url = url;
     }
 
+    // rank：新建的待办事项与旧数据没有排序键（null），排序时按 OrderKeys.LAST 处理，按创建顺序（id）排在已有待办事项之后
+    public String getRank() {
+        return rank;
+    }
+
+    public void setRank(String rank) {
+        this.rank = rank;
+    }
+
+    // version：旧数据没有版本号，视为 0
+    public Integer getVersion() {
+        return getOrElse(version, 0);
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    // equals/hashCode 只比较待办事项的内容，不包括版本号和排序键
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -150,6 +179,8 @@ public class Todo {
                 ", completed=" + completed +
                 ", order=" + order +
                 ", url='" + url + '\'' +
+                ", rank='" + rank + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,184 @@
+package com.csranger.todolist.limit;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按客户端限流：每个客户端一个令牌桶，超出限制的请求在进入存储之前直接返回 429 与 Retry-After。
+ * 1. 令牌桶用 GCRA（generic cell rate algorithm）实现，每个桶只有一个 AtomicLong（理论到达时间 TAT），以 CAS 更新，不加锁；
+ * 桶保存在 ConcurrentHashMap 中，不同客户端的更新分散在各自的桶上，互不竞争
+ * 2. TAT 已经早于当前时间的桶与新建的桶完全等价，定期（在请求处理中顺带）删除即可，不会丢失限流状态
+ * 3. 每条路由可以配置各自的限制，没有单独配置的路由使用默认限制
+ * 4. 带 API key 的请求同时按 IP（额度为 key 的 ip.multiplier 倍）与 key 限流：先检查所在 IP 还有额度，才为 key 创建桶，
+ * key 由客户端自己提供，不断更换 key 既无法超出所在 IP 的额度，也不会让桶的数量无限增长
+ * 5. 同一个 Vertx 实例中相同配置的限流器只有一个（保存在 local shared data 中），部署多个 Verticle 实例（-instances N）时
+ * 共用同一组令牌桶，总的额度仍是配置的限制，而不是 N 倍
+ */
+public class RateLimiter implements Handler<RoutingContext>, Shareable {
+
+    private static final String LIMITED = "rateLimiter.limited";     // 请求已经被某个限流器检查过（或豁免），后面的限流器跳过
+    private static final long EVICT_INTERVAL = TimeUnit.SECONDS.toNanos(10);     // 清理空闲桶的间隔
+    private static final String SHARED_MAP = "rateLimiter";
+
+    private final Buckets keys;         // 按 key
+    private final Buckets ips;          // 没有 key 的请求按 IP
+    private final Buckets keyedIps;     // 带 key 的请求按 IP（ip.multiplier 为 1 时与 ips 相同）
+    private final String keyHeader;
+    private final AtomicLong lastEvict;
+
+    /**
+     * @param rate         每秒允许的请求数（长期平均）
+     * @param burst        允许的突发请求数
+     * @param keyHeader    用于区分客户端的请求头（如 X-API-Key），为 null 或请求中没有该请求头时按 IP 区分
+     * @param ipMultiplier 带 key 的请求所在 IP 的额度是单个 key 的多少倍（同一 IP 后面有多个合法客户端时调大）
+     */
+    public RateLimiter(double rate, int burst, String keyHeader, double ipMultiplier) {
+        if (rate <= 0 || burst < 1) throw new IllegalArgumentException("Invalid rate limit: " + rate + "/s, burst " + burst);
+        if (ipMultiplier < 1) throw new IllegalArgumentException("Invalid ip.multiplier: " + ipMultiplier);
+        this.keys = new Buckets(rate, burst);
+        this.ips = new Buckets(rate, burst);
+        this.keyedIps = ipMultiplier == 1 ? ips : new Buckets(rate * ipMultiplier, (int) Math.ceil(burst * ipMultiplier));
+        this.keyHeader = keyHeader;
+        this.lastEvict = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 按配置把限流器注册到路由器上，需要在其他业务处理器之前调用；没有 rate.limit 配置时不限流。
+     * 同一个 Vertx 实例中的各个 Verticle 实例使用同样的配置时共用限流器：
+     * "rate.limit": {
+     *   "key.header": "X-API-Key",
+     *   "ip.multiplier": 4,
+     *   "default": {"rate": 100, "burst": 200},
+     *   "routes": {"GET /todos": {"rate": 10, "burst": 20}, "GET /lists/:listId/todos": {"rate": 10, "burst": 20}}
+     * }
+     */
+    public static void install(Vertx vertx, Router router, JsonObject config) {
+        if (config == null) return;
+        final String keyHeader = config.getString("key.header");
+        final double ipMultiplier = config.getDouble("ip.multiplier", 1.0);
+        JsonObject routes = config.getJsonObject("routes", new JsonObject());
+        for (String route : routes.fieldNames()) {
+            String[] methodAndPath = route.split(" ", 2);
+            if (methodAndPath.length != 2) throw new IllegalArgumentException("Invalid rate limited route: " + route);
+            router.route(HttpMethod.valueOf(methodAndPath[0]), methodAndPath[1])
+                    .handler(shared(vertx, config, route, routes.getJsonObject(route), keyHeader, ipMultiplier));
+        }
+        JsonObject defaults = config.getJsonObject("default");
+        if (defaults != null) router.route().handler(shared(vertx, config, "default", defaults, keyHeader, ipMultiplier));
+    }
+
+    // 以整个 rate.limit 配置与路由为键，同一个 Vertx 实例中只创建一次
+    private static RateLimiter shared(Vertx vertx, JsonObject config, String route, JsonObject limit, String keyHeader,
+                                      double ipMultiplier) {
+        LocalMap<String, RateLimiter> limiters = vertx.sharedData().getLocalMap(SHARED_MAP);
+        return limiters.computeIfAbsent(config.encode() + " " + route, k ->
+                new RateLimiter(limit.getDouble("rate"), limit.getInteger("burst", 1), keyHeader, ipMultiplier));
+    }
+
+    /**
+     * 豁免请求，之后的限流器都不再检查（例如本进程发给自己的预热请求），需要在限流器之前调用
+     */
+    public static void exempt(RoutingContext context) {
+        context.put(LIMITED, Boolean.TRUE);
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        if (context.get(LIMITED) != null) {
+            context.next();
+            return;
+        }
+        context.put(LIMITED, Boolean.TRUE);
+        String key = keyHeader == null ? null : context.request().getHeader(keyHeader);
+        final long now = System.nanoTime();
+        final long last = lastEvict.get();
+        if (now - last > EVICT_INTERVAL && lastEvict.compareAndSet(last, now)) evictIdle(now);
+        long wait = acquire(key, context.request().remoteAddress().host(), now);
+        if (wait == 0) {
+            context.next();
+            return;
+        }
+        context.response()
+                .setStatusCode(429)     // Too Many Requests
+                .putHeader("Retry-After", String.valueOf(retryAfterSeconds(wait)))
+                .end();
+    }
+
+    /**
+     * 为请求消耗令牌：没有 key 时只按 IP；有 key 时先确认所在 IP 还有额度（不消耗、不创建桶），再按 key、最后按 IP 消耗。
+     * 允许时返回 0，否则返回需要等待的纳秒数。被 IP 拒绝的请求不会为 key 创建桶；
+     * 极少数情况下并发请求在检查之后耗尽了 IP 的额度，此时 key 的令牌已经消耗，相当于该 key 的一次请求
+     */
+    long acquire(String key, String ip, long now) {
+        if (key == null) return ips.acquire(ip, now);
+        long wait = keyedIps.peek(ip, now);
+        if (wait != 0) return wait;
+        wait = keys.acquire(key, now);
+        return wait != 0 ? wait : keyedIps.acquire(ip, now);
+    }
+
+    void evictIdle(long now) {
+        keys.evictIdle(now);
+        ips.evictIdle(now);
+        if (keyedIps != ips) keyedIps.evictIdle(now);
+    }
+
+    // 当前的令牌桶数量
+    int buckets() {
+        return keys.buckets.size() + ips.buckets.size() + (keyedIps != ips ? keyedIps.buckets.size() : 0);
+    }
+
+    // Retry-After 以秒为单位，向上取整且至少为 1
+    static long retryAfterSeconds(long waitNanos) {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        return Math.max(1, (waitNanos + second - 1) / second);
+    }
+
+    // 一组客户端的令牌桶，使用同样的限制
+    private static final class Buckets {
+
+        private final long interval;        // 两个请求之间的平均间隔（纳秒）= 1s / rate
+        private final long tolerance;       // 允许的突发量对应的时间（纳秒）= interval * burst
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+        Buckets(double rate, int burst) {
+            this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            this.tolerance = interval * burst;
+        }
+
+        // 如果现在请求需要等待多久（0 表示允许），不消耗令牌，也不创建桶
+        long peek(String client, long now) {
+            AtomicLong tat = buckets.get(client);
+            if (tat == null) return 0;
+            long next = Math.max(tat.get(), now) + interval;
+            return next - now > tolerance ? next - now - tolerance : 0;
+        }
+
+        long acquire(String client, long now) {
+            AtomicLong tat = buckets.get(client);     // 先 get：Java 8 的 computeIfAbsent 即使键已存在也可能对桶加锁
+            if (tat == null) tat = buckets.computeIfAbsent(client, k -> new AtomicLong(now));
+            while (true) {
+                long current = tat.get();
+                long next = Math.max(current, now) + interval;
+                if (next - now > tolerance) return next - now - tolerance;
+                if (tat.compareAndSet(current, next)) return 0;
+            }
+        }
+
+        // 删除已经回满的桶；与并发的 acquire 竞争时，至多有一个请求记在了被删除的桶上
+        void evictIdle(long now) {
+            buckets.values().removeIf(tat -> tat.get() - now <= 0);
+        }
+    }
+}
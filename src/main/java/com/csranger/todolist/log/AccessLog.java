@@ -0,0 +1,311 @@
+package com.csranger.todolist.log;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步访问日志：每个请求结束时记录方法、路由、状态码、总耗时、存储耗时与响应字节数，每行一个 JSON。
+ * 1. 请求线程（event loop）只把这几个字段写进预先分配好的环形缓冲区，append 不分配对象、不加锁、不做 IO：
+ * 多个生产者通过 CAS 抢占槽位，每个槽位带一个序号用于发布（有界 MPSC 队列）；
+ * 每个请求只分配一个 Timing（同时作为响应结束的回调，并以 long 字段累加存储耗时，不装箱）
+ * 2. 缓冲区满时直接丢弃并计数，绝不阻塞 event loop
+ * 3. 后台单个写线程成批取出、格式化后写入文件，文件超过 maxBytes 时轮转为 file.1 ... file.(maxFiles-1)；
+ * 写入失败（磁盘满、目录被删除等）时丢弃这一批并计数，关闭文件后等待一段时间再重新打开，写线程不会因此退出
+ * 4. 同一个文件只有一个 AccessLog（一个写线程）：create 按文件共享实例，多个 Verticle 实例同时写入同一个文件也不会互相覆盖或错乱轮转
+ */
+public class AccessLog implements Handler<RoutingContext> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessLog.class);
+
+    private static final String TIMING = "accessLog.timing";
+    private static final int WRITE_BATCH_SIZE = 512;               // 写线程每批最多格式化的条数
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);   // 缓冲区为空时写线程休眠的时间
+    private static final long ERROR_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);        // 写入失败后重试前等待的时间
+
+    private static final Map<File, AccessLog> SHARED = new HashMap<>();     // 按文件共享的实例，由自身加锁保护
+
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    // 环形缓冲区：按字段分开的数组（struct of arrays），启动时一次分配
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final HttpMethod[] methods;
+    private final String[] routes;
+    private final int[] statuses;
+    private final long[] latencies;
+    private final long[] backends;
+    private final long[] bytes;
+    private final AtomicLong tail = new AtomicLong();      // 下一个可抢占的位置（生产者）
+    private long head;                                     // 下一个待读取的位置（只由写线程访问）
+
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private int references;         // 共享该实例的 Verticle 数，由 SHARED 保护
+
+    // 以下只由写线程访问
+    private final StringBuilder batch = new StringBuilder(WRITE_BATCH_SIZE * 160);
+    private OutputStream out;
+    private long written;
+
+    /**
+     * @param capacity 缓冲区可容纳的条数，向上取整为 2 的幂
+     */
+    public AccessLog(File file, int capacity, long maxBytes, int maxFiles) {
+        this(file, capacity, maxBytes, maxFiles, true);
+    }
+
+    // startWriter 为 false 时不启动写线程，由测试直接调用 flush
+    AccessLog(File file, int capacity, long maxBytes, int maxFiles, boolean startWriter) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(maxFiles, 1);
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.timestamps = new long[size];
+        this.methods = new HttpMethod[size];
+        this.routes = new String[size];
+        this.statuses = new int[size];
+        this.latencies = new long[size];
+        this.backends = new long[size];
+        this.bytes = new long[size];
+        this.writer = new Thread(this::drainLoop, "access-log-writer");
+        this.writer.setDaemon(true);
+        if (startWriter) this.writer.start();
+    }
+
+    /**
+     * 取得写入 access.log.file 的共享实例：同一个文件的第一次调用按配置创建，之后的调用（其他 Verticle 实例）复用同一个实例，
+     * 每次调用对应一次 close，最后一次 close 时才停止写线程
+     */
+    public static AccessLog create(JsonObject config) {
+        final File file = new File(config.getString("access.log.file")).toPath().toAbsolutePath().normalize().toFile();
+        synchronized (SHARED) {
+            AccessLog log = SHARED.get(file);
+            if (log == null) {
+                log = new AccessLog(file,
+                        config.getInteger("access.log.buffer-size", 8192),
+                        config.getLong("access.log.max-bytes", 64L * 1024 * 1024),
+                        config.getInteger("access.log.max-files", 5));
+                SHARED.put(file, log);
+            }
+            log.references++;
+            return log;
+        }
+    }
+
+    /**
+     * 注册在所有路由之前：记录开始时间，响应结束时写入一条访问日志
+     */
+    @Override
+    public void handle(RoutingContext context) {
+        Timing timing = new Timing(context, System.nanoTime());
+        context.put(TIMING, timing);
+        context.addBodyEndHandler(timing);
+        context.next();
+    }
+
+    /**
+     * 累加本次请求在存储上花费的时间（纳秒），没有注册访问日志时忽略
+     */
+    public static void addBackendTime(RoutingContext context, long nanos) {
+        Timing timing = context.get(TIMING);
+        if (timing != null) timing.backendNanos += nanos;
+    }
+
+    // 一个请求的计时：开始时间与累计的存储耗时，响应结束时写入访问日志（都在该请求的 event loop 上访问）
+    private final class Timing implements Handler<Void> {
+        private final RoutingContext context;
+        private final long start;
+        private long backendNanos;
+
+        Timing(RoutingContext context, long start) {
+            this.context = context;
+            this.start = start;
+        }
+
+        @Override
+        public void handle(Void v) {
+            Route route = context.currentRoute();
+            append(context.request().method(), route == null || route.getPath() == null ? "-" : route.getPath(),
+                    context.response().getStatusCode(), System.nanoTime() - start,
+                    backendNanos, context.response().bytesWritten());
+        }
+    }
+
+    /**
+     * 写入一条访问日志，缓冲区已满时丢弃并返回 false
+     */
+    public boolean append(HttpMethod method, String route, int status, long latencyNanos, long backendNanos, long byteCount) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (difference < 0) {    // 该槽位还没有被写线程读走：缓冲区已满
+                dropped.increment();
+                return false;
+            } else {                        // 被其他生产者抢先，重新读取
+                position = tail.get();
+            }
+        }
+        timestamps[index] = System.currentTimeMillis();
+        methods[index] = method;
+        routes[index] = route;
+        statuses[index] = status;
+        latencies[index] = latencyNanos;
+        backends[index] = backendNanos;
+        bytes[index] = byteCount;
+        sequences.lazySet(index, position + 1);    // 发布：写线程看到序号后才会读取上面的字段
+        return true;
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 停止写线程：先把缓冲区中剩余的日志写完再关闭文件；共享的实例只有最后一个使用者关闭时才真正停止
+     */
+    public void close() {
+        synchronized (SHARED) {
+            if (references > 1) {
+                references--;
+                return;
+            }
+            references = 0;
+            SHARED.remove(file, this);
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                boolean stopping = closed;         // 先读 closed：之后还能取到的日志都会在退出前写完
+                int n = flush();
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    LOGGER.warn("Access log dropped " + (drops - reportedDrops) + " entries (" + drops + " in total)");
+                    reportedDrops = drops;
+                }
+                if (n < 0 && !stopping) LockSupport.parkNanos(ERROR_PARK_NANOS);
+                if (n == 0) {
+                    if (stopping) break;
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * 取出一批日志写入文件，返回写入的条数；写入失败时这一批计入丢弃，关闭文件（下一批重新打开）并返回 -1
+     */
+    int flush() {
+        int n = drain();
+        if (n == 0) return 0;
+        try {
+            write(batch);
+            return n;
+        } catch (IOException e) {
+            LOGGER.error("Failed to write access log " + file, e);
+            dropped.add(n);
+            closeQuietly();
+            return -1;
+        }
+    }
+
+    // 取出至多 WRITE_BATCH_SIZE 条并格式化到 batch 中
+    private int drain() {
+        batch.setLength(0);
+        int n = 0;
+        while (n < WRITE_BATCH_SIZE) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) break;
+            batch.append("{\"ts\":\"").append(Instant.ofEpochMilli(timestamps[index]))
+                    .append("\",\"method\":\"").append(methods[index])
+                    .append("\",\"route\":\"").append(routes[index])
+                    .append("\",\"status\":").append(statuses[index])
+                    .append(",\"latency_us\":").append(latencies[index] / 1000)
+                    .append(",\"backend_us\":").append(backends[index] / 1000)
+                    .append(",\"bytes\":").append(bytes[index])
+                    .append("}\n");
+            routes[index] = null;
+            sequences.lazySet(index, head + mask + 1);     // 归还槽位，生产者绕回一圈后可以再次使用
+            head++;
+            n++;
+        }
+        return n;
+    }
+
+    private void write(StringBuilder batch) throws IOException {
+        byte[] data = batch.toString().getBytes(StandardCharsets.UTF_8);
+        if (out == null) open();
+        else if (written + data.length > maxBytes) rotate();
+        out.write(data);
+        out.flush();
+        written += data.length;
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) throw new IOException("Cannot create " + parent);
+        out = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+        written = file.length();
+    }
+
+    // file -> file.1 -> file.2 ...，超出 maxFiles 的最旧文件被删除
+    private void rotate() throws IOException {
+        out.close();
+        LogFiles.rotate(file, maxFiles);
+        open();
+    }
+
+    private void closeQuietly() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close access log " + file, e);
+        } finally {
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.csranger.todolist.log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 日志文件的轮转，访问日志与 trace 导出共用
+ */
+public final class LogFiles {
+
+    private LogFiles() {
+    }
+
+    /**
+     * file -> file.1 -> file.2 ...，超出 maxFiles 的最旧文件被删除；maxFiles 为 1 时直接删除 file。
+     * 调用方需要先关闭 file 上的输出流，并保证同一时刻只有一个线程轮转同一个文件
+     */
+    public static void rotate(File file, int maxFiles) throws IOException {
+        File oldest = new File(file.getPath() + "." + (maxFiles - 1));
+        if (oldest.exists() && !oldest.delete()) throw new IOException("Cannot delete " + oldest);
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists() && !from.renameTo(new File(file.getPath() + "." + (i + 1)))) {
+                throw new IOException("Cannot rotate " + from);
+            }
+        }
+        if (maxFiles > 1 && !file.renameTo(new File(file.getPath() + ".1"))) throw new IOException("Cannot rotate " + file);
+        if (maxFiles == 1 && !file.delete()) throw new IOException("Cannot delete " + file);
+    }
+}
@@ -0,0 +1,189 @@
+package com.csranger.todolist.order;
+
+/**
+ * 分数索引（fractional indexing）排序键：待办事项按排序键的字典序排列，移动一个待办事项时只需要为它生成一个
+ * 介于前后两个相邻待办事项之间的新键，写一次即可，不需要给其他待办事项重新编号。
+ * 键由「整数部分 + 小数部分」组成，均使用 base62 数字（0-9A-Za-z，按 ASCII 升序）：
+ * 1. 整数部分的首字符决定其长度：a..z 表示 1..26 位的非负整数，Z..A 表示 1..26 位的负整数，因此追加到首尾时键长只以对数速度增长
+ * 2. 小数部分不以 0 结尾，保证任意两个键之间总能再插入一个键；反复插入同一个位置时小数部分会逐渐变长，需要重新平衡
+ * 排序键必须按字节比较：Java 的 String.compareTo、Redis 的字节序以及 MySQL 的 ascii_bin 排序规则都满足
+ */
+public final class OrderKeys {
+
+    static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+    private static final char ZERO = DIGITS.charAt(0);
+    private static final char MAX_DIGIT = DIGITS.charAt(BASE - 1);
+    private static final String SMALLEST_INTEGER = "A" + repeat(ZERO, 26);   // 保留，不作为键使用
+
+    /**
+     * 还没有排序键的待办事项（新建的、旧数据）使用的默认键：最大的整数键，排在所有排过序的待办事项之后，彼此之间按 id 排列。
+     * 移动时不会生成大于等于它的键（见 TodoReorderer），因此新建的待办事项总是排在最后
+     */
+    public static final String LAST = "z" + repeat(MAX_DIGIT, 26);
+
+    private OrderKeys() {
+    }
+
+    /**
+     * 排序时使用的键：没有排序键（null）的待办事项按 LAST 排序。LAST 只在排序时使用，不会出现在响应或存储中
+     */
+    public static String sortKey(String rank) {
+        return rank != null ? rank : LAST;
+    }
+
+    /**
+     * 第 n 个（n >= 0）整数键：a0, a1, ..., az, b00, ..., bzz, c000, ...，与 between(上一个, null) 的结果一致
+     */
+    public static String of(long n) {
+        if (n < 0) throw new IllegalArgumentException("Negative sequence: " + n);
+        int length = 1;
+        long capacity = BASE;
+        while (n >= capacity) {
+            n -= capacity;
+            length++;
+            capacity *= BASE;
+        }
+        char[] key = new char[length + 1];
+        key[0] = (char) ('a' + length - 1);
+        for (int i = length; i > 0; i--) {
+            key[i] = DIGITS.charAt((int) (n % BASE));
+            n /= BASE;
+        }
+        return new String(key);
+    }
+
+    /**
+     * 生成严格介于 a 与 b 之间的键；a 为 null 表示排在最前，b 为 null 表示排在最后
+     *
+     * @throws IllegalArgumentException a、b 不是合法的键，或者 a >= b
+     */
+    public static String between(String a, String b) {
+        if (a != null) validate(a);
+        if (b != null) validate(b);
+        if (a != null && b != null && a.compareTo(b) >= 0) {
+            throw new IllegalArgumentException(a + " >= " + b);
+        }
+        if (a == null) {
+            if (b == null) return of(0);
+            String ib = integerPart(b);
+            String fb = b.substring(ib.length());
+            if (ib.equals(SMALLEST_INTEGER)) return ib + midpoint("", fb);
+            if (ib.length() < b.length()) return ib;          // b 带有小数部分，b 的整数部分本身就比 b 小
+            String decremented = decrement(ib);
+            if (decremented == null) throw new IllegalArgumentException("Cannot decrement " + ib);
+            return decremented;
+        }
+        String ia = integerPart(a);
+        String fa = a.substring(ia.length());
+        if (b == null) {
+            String incremented = increment(ia);
+            return incremented == null ? ia + midpoint(fa, null) : incremented;
+        }
+        String ib = integerPart(b);
+        String fb = b.substring(ib.length());
+        if (ia.equals(ib)) return ia + midpoint(fa, fb);
+        String incremented = increment(ia);
+        if (incremented == null) throw new IllegalArgumentException("Cannot increment " + ia);
+        if (incremented.compareTo(b) < 0) return incremented;
+        return ia + midpoint(fa, null);
+    }
+
+    public static boolean isValid(String key) {
+        try {
+            validate(key);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // 小数部分的中点：a < b，b 为 null 表示 1；a、b 都不以 0 结尾
+    private static String midpoint(String a, String b) {
+        if (b != null) {
+            // 公共前缀原样保留，在第一个不同的位置上取中点
+            int n = 0;
+            while (n < b.length() && (n < a.length() ? a.charAt(n) : ZERO) == b.charAt(n)) n++;
+            if (n > 0) return b.substring(0, n) + midpoint(a.substring(Math.min(n, a.length())), b.substring(n));
+        }
+        int digitA = a.isEmpty() ? 0 : DIGITS.indexOf(a.charAt(0));
+        int digitB = b != null ? DIGITS.indexOf(b.charAt(0)) : BASE;
+        if (digitB - digitA > 1) {
+            return String.valueOf(DIGITS.charAt((digitA + digitB + 1) / 2));
+        }
+        // 首位相邻：b 有更多位时取 b 的首位即可，否则保留 a 的首位，在下一位继续取中点
+        if (b != null && b.length() > 1) return b.substring(0, 1);
+        return DIGITS.charAt(digitA) + midpoint(a.isEmpty() ? "" : a.substring(1), null);
+    }
+
+    private static int integerLength(char head) {
+        if (head >= 'a' && head <= 'z') return head - 'a' + 2;
+        if (head >= 'A' && head <= 'Z') return 'Z' - head + 2;
+        throw new IllegalArgumentException("Invalid order key head: " + head);
+    }
+
+    private static String integerPart(String key) {
+        int length = integerLength(key.charAt(0));
+        if (length > key.length()) throw new IllegalArgumentException("Invalid order key: " + key);
+        return key.substring(0, length);
+    }
+
+    private static void validate(String key) {
+        if (key.isEmpty()) throw new IllegalArgumentException("Empty order key");
+        for (int i = 1; i < key.length(); i++) {
+            if (DIGITS.indexOf(key.charAt(i)) < 0) throw new IllegalArgumentException("Invalid order key: " + key);
+        }
+        if (key.equals(SMALLEST_INTEGER)) throw new IllegalArgumentException("Invalid order key: " + key);
+        String fraction = key.substring(integerPart(key).length());
+        if (!fraction.isEmpty() && fraction.charAt(fraction.length() - 1) == ZERO) {
+            throw new IllegalArgumentException("Invalid order key: " + key);
+        }
+    }
+
+    // 整数部分加一，超出最大整数时返回 null
+    private static String increment(String integer) {
+        char head = integer.charAt(0);
+        StringBuilder digits = new StringBuilder(integer.substring(1));
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int d = DIGITS.indexOf(digits.charAt(i)) + 1;
+            if (d < BASE) {
+                digits.setCharAt(i, DIGITS.charAt(d));
+                return head + digits.toString();
+            }
+            digits.setCharAt(i, ZERO);
+        }
+        // 所有位都进位：换成下一个长度的首字符
+        if (head == 'Z') return "a" + ZERO;
+        if (head == 'z') return null;
+        char next = (char) (head + 1);
+        if (next > 'a') digits.append(ZERO);
+        else digits.setLength(digits.length() - 1);
+        return next + digits.toString();
+    }
+
+    // 整数部分减一，低于最小整数时返回 null
+    private static String decrement(String integer) {
+        char head = integer.charAt(0);
+        StringBuilder digits = new StringBuilder(integer.substring(1));
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int d = DIGITS.indexOf(digits.charAt(i)) - 1;
+            if (d >= 0) {
+                digits.setCharAt(i, DIGITS.charAt(d));
+                return head + digits.toString();
+            }
+            digits.setCharAt(i, MAX_DIGIT);
+        }
+        if (head == 'a') return "Z" + MAX_DIGIT;
+        if (head == 'A') return null;
+        char previous = (char) (head - 1);
+        if (previous < 'Z') digits.append(MAX_DIGIT);
+        else digits.setLength(digits.length() - 1);
+        return previous + digits.toString();
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(c);
+        return sb.toString();
+    }
+}
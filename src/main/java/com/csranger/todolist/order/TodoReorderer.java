@@ -0,0 +1,165 @@
+package com.csranger.todolist.order;
+
+import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.service.TodoService;
+import com.csranger.todolist.service.VersionConflictException;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 待办事项的移动与排序键的重新平衡
+ * 1. move 为待办事项生成一个介于前后两个相邻待办事项之间的 rank，只写被移动的这一个待办事项
+ * 2. 反复移动到同一个位置会让 rank 越来越长：超过 REBALANCE_LENGTH 时在后台延迟重新平衡该清单（按当前顺序把所有 rank
+ * 改写为 OrderKeys.of(0..n-1)）；相邻的 rank 相同、不合法或新的 rank 超过列宽 MAX_LENGTH 时，先立即重新平衡再移动
+ * 3. 移动到最后时新的 rank 仍小于未排序待办事项的默认键 OrderKeys.LAST，之后新建的待办事项总是排在最后；
+ * 前一个相邻的待办事项本身还没有排序键时同样需要先重新平衡
+ * 非线程安全：只在所属 Verticle 的 event loop 中访问
+ */
+public class TodoReorderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoReorderer.class);
+
+    public static final Comparator<Todo> BY_RANK = Comparator.comparing((Todo todo) -> OrderKeys.sortKey(todo.getRank()))
+            .thenComparingInt(Todo::getId);
+
+    static final int REBALANCE_LENGTH = 16;
+    static final int MAX_LENGTH = 64;                   // 与 JDBC rank 列的宽度一致
+    private static final long REBALANCE_DELAY = 10000;  // 后台重新平衡前等待的毫秒数，合并这段时间内的多次触发
+
+    private final Vertx vertx;
+    private final TodoService service;
+    private final Set<String> pending = new LinkedHashSet<>();               // 等待后台重新平衡的清单
+    private final Map<String, List<Future<Void>>> rebalancing = new HashMap<>();   // 正在重新平衡的清单及其等待者
+    private boolean scheduled;
+
+    public TodoReorderer(Vertx vertx, TodoService service) {
+        this.vertx = vertx;
+        this.service = service;
+    }
+
+    /**
+     * 把待办事项移动到 afterId 之后、beforeId 之前（客户端看到的相邻待办事项，为 null 表示移动到最前或最后）
+     * 待办事项不存在时返回 null；相邻的待办事项已被删除或顺序与客户端看到的不一致时以 IllegalStateException 失败
+     */
+    public Future<Todo> move(String listId, String todoId, String afterId, String beforeId, Integer expectedVersion) {
+        return move(listId, todoId, afterId, beforeId, expectedVersion, true);
+    }
+
+    private Future<Todo> move(String listId, String todoId, String afterId, String beforeId, Integer expectedVersion,
+                              boolean mayRebalance) {
+        Future<Optional<Todo>> after = neighbour(listId, afterId);
+        Future<Optional<Todo>> before = neighbour(listId, beforeId);
+        return CompositeFuture.all(after, before).compose(v -> {
+            if ((afterId != null && !after.result().isPresent()) || (beforeId != null && !before.result().isPresent())) {
+                return Future.failedFuture(new IllegalStateException("Neighbour of todo " + todoId + " no longer exists"));
+            }
+            // 相邻的待办事项没有排序键时按 LAST 处理（null 只表示没有相邻的待办事项）
+            final String a = after.result().map(todo -> OrderKeys.sortKey(todo.getRank())).orElse(null);
+            final String b = before.result().map(todo -> OrderKeys.sortKey(todo.getRank())).orElse(null);
+            if (a != null && b != null && a.compareTo(b) > 0) {
+                return Future.failedFuture(new IllegalStateException("Neighbours of todo " + todoId + " are out of order"));
+            }
+            final String upper = b == null ? OrderKeys.LAST : b;
+            String rank = null;
+            if ((a == null || OrderKeys.isValid(a)) && OrderKeys.isValid(upper) && (a == null || a.compareTo(upper) < 0)) {
+                // 移动到最前且后面都是未排序的待办事项时，任何小于 LAST 的键都可以，取最短的 of(0)
+                rank = a == null && upper.equals(OrderKeys.LAST) ? OrderKeys.of(0) : OrderKeys.between(a, upper);
+            }
+            if (rank == null || rank.length() > MAX_LENGTH) {
+                if (!mayRebalance) {
+                    return Future.failedFuture(new IllegalStateException("No room between " + a + " and " + b));
+                }
+                // 重新平衡会改写所有待办事项（包括被移动的这一个）的版本号，因此先校验 If-Match，之后不再限定版本
+                return checkVersion(listId, todoId, expectedVersion)
+                        .compose(r -> rebalance(listId))
+                        .compose(r -> move(listId, todoId, afterId, beforeId, null, false));
+            }
+            if (rank.length() > REBALANCE_LENGTH) schedule(listId);
+            Todo patch = new Todo();
+            patch.setRank(rank);
+            return service.update(listId, todoId, patch, expectedVersion);
+        });
+    }
+
+    /**
+     * 客户端提供的排序键（导入时）是否可以直接写入：没有排序键，或者合法且不超过列宽
+     */
+    public static boolean isValidRank(String rank) {
+        return rank == null || (OrderKeys.isValid(rank) && rank.length() <= MAX_LENGTH);
+    }
+
+    private Future<Optional<Todo>> neighbour(String listId, String todoId) {
+        return todoId == null ? Future.succeededFuture(Optional.empty()) : service.getCertain(listId, todoId);
+    }
+
+    private Future<Void> checkVersion(String listId, String todoId, Integer expectedVersion) {
+        if (expectedVersion == null) return Future.succeededFuture();
+        return service.getCertain(listId, todoId).compose(todo -> !todo.isPresent() || todo.get().getVersion().equals(expectedVersion)
+                ? Future.succeededFuture()
+                : Future.failedFuture(new VersionConflictException(todoId)));
+    }
+
+    /**
+     * 按清单当前的顺序把所有待办事项的 rank 改写为等间距的整数键；同一清单同时只有一次重新平衡，重复调用会等待同一次完成
+     * 重新平衡期间并发的移动可能读到新旧两种 rank，此时返回的冲突由客户端刷新后重试
+     */
+    public Future<Void> rebalance(String listId) {
+        Future<Void> result = Future.future();
+        List<Future<Void>> waiters = rebalancing.get(listId);
+        if (waiters != null) {
+            waiters.add(result);
+            return result;
+        }
+        rebalancing.put(listId, new ArrayList<>());
+        pending.remove(listId);
+        service.getAll(listId).compose(todos -> rewrite(listId, todos, 0)).setHandler(ar -> {
+            if (ar.succeeded()) LOGGER.info("Rebalanced order keys of list " + listId);
+            for (Future<Void> waiter : rebalancing.remove(listId)) waiter.handle(ar);
+            result.handle(ar);
+        });
+        return result;
+    }
+
+    // 逐个改写，避免一次性占满存储的连接
+    private Future<Void> rewrite(String listId, List<Todo> todos, int index) {
+        if (index >= todos.size()) return Future.succeededFuture();
+        Todo patch = new Todo();
+        patch.setRank(OrderKeys.of(index));
+        return service.update(listId, String.valueOf(todos.get(index).getId()), patch, null)
+                .compose(t -> rewrite(listId, todos, index + 1));
+    }
+
+    private void schedule(String listId) {
+        pending.add(listId);
+        if (scheduled) return;
+        scheduled = true;
+        vertx.setTimer(REBALANCE_DELAY, t -> rebalancePending());
+    }
+
+    // 后台依次重新平衡等待中的清单，每次一个
+    private void rebalancePending() {
+        Iterator<String> it = pending.iterator();
+        if (!it.hasNext()) {
+            scheduled = false;
+            return;
+        }
+        String listId = it.next();
+        rebalance(listId).setHandler(ar -> {
+            if (ar.failed()) LOGGER.error("Failed to rebalance order keys of list " + listId, ar.cause());
+            rebalancePending();
+        });
+    }
+}
@@ -0,0 +1,294 @@
+package com.csranger.todolist.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 单个清单的待办事项标题倒排索引：词项 -> 按 id 升序排列的 int 数组（posting list）
+ * 1. 拉丁字母/数字按单词切分，查询时支持前缀匹配（基于 TreeMap 的有序范围查找）
+ * 2. 中文等没有空格分隔的文字按单字 + 二元组（bigram）切分，查询短语拆成二元组后取交集
+ * 3. 不保存标题本身：每个待办事项只记录它所在的 posting list（引用数组，用于更新/删除时从中移除），
+ * 以 int 为键的开放寻址表保存，不装箱
+ * 非线程安全：只在所属 Verticle 的 event loop 中访问
+ */
+class TitleIndex {
+
+    private static final int EXACT_WEIGHT = 2;          // 完整匹配一个词项的得分
+    private static final int PREFIX_WEIGHT = 1;         // 仅前缀匹配的得分
+    private static final int MAX_PREFIX_TERMS = 64;     // 一个查询词最多展开的前缀词项数，避免过短的前缀扫描整个词典
+    private static final int MIN_PREFIX_LENGTH = 2;     // 查询词至少有这么多个字符时才做前缀匹配
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final DocTerms docs = new DocTerms();
+
+    void put(int id, String title) {
+        remove(id);
+        Set<String> tokens = tokenize(title, true);
+        if (tokens.isEmpty()) return;
+        Postings[] postings = new Postings[tokens.size()];
+        int i = 0;
+        for (String token : tokens) {
+            Postings p = terms.computeIfAbsent(token, Postings::new);
+            p.add(id);
+            postings[i++] = p;
+        }
+        docs.put(id, postings);
+    }
+
+    void remove(int id) {
+        Postings[] old = docs.remove(id);
+        if (old == null) return;
+        for (Postings postings : old) {
+            if (postings.remove(id) && postings.size == 0) terms.remove(postings.term);
+        }
+    }
+
+    // 没有任何已索引的待办事项
+    boolean isEmpty() {
+        return docs.size == 0;
+    }
+
+    /**
+     * 返回得分最高的至多 limit 个待办事项 id：所有查询词都必须命中（完整或前缀），得分相同时 id 大（较新）的靠前
+     */
+    List<Integer> search(String query, int limit) {
+        List<String> tokens = new ArrayList<>(tokenize(query, false));
+        if (tokens.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        List<List<Match>> matches = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            List<Match> tokenMatches = lookup(token);
+            if (tokenMatches.isEmpty()) return Collections.emptyList();
+            matches.add(tokenMatches);
+        }
+        // 从候选最少的查询词开始，依次与其他查询词的候选做有序归并求交集
+        matches.sort((a, b) -> Integer.compare(candidates(a), candidates(b)));
+        long[] hits = collect(matches.get(0));
+        int n = hits.length;
+        for (int t = 1; t < matches.size() && n > 0; t++) {
+            long[] other = collect(matches.get(t));
+            int m = 0;
+            for (int i = 0, j = 0; i < n && j < other.length; ) {
+                int a = id(hits[i]);
+                int b = id(other[j]);
+                if (a < b) i++;
+                else if (a > b) j++;
+                else hits[m++] = hit(a, score(hits[i++]) + score(other[j++]));
+            }
+            n = m;
+        }
+        return top(hits, n, limit);
+    }
+
+    // 合并一个查询词命中的所有 posting list：候选编码为 long（高 32 位 id，低 32 位得分），按 id 升序排列，同一 id 只保留最高得分
+    private static long[] collect(List<Match> matches) {
+        long[] hits = new long[candidates(matches)];
+        int n = 0;
+        for (Match match : matches) {
+            for (int i = 0; i < match.postings.size; i++) hits[n++] = hit(match.postings.ids[i], match.weight);
+        }
+        if (matches.size() == 1) return hits;       // 单个 posting list 本身已有序且无重复
+        Arrays.sort(hits);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && id(hits[i + 1]) == id(hits[i])) continue;
+            hits[m++] = hits[i];
+        }
+        return Arrays.copyOf(hits, m);
+    }
+
+    // 候选已按 id 升序排列：按得分分桶后从高分桶取起，同一得分内 id 大（较新）的靠前，全程只使用原始类型数组
+    private static List<Integer> top(long[] hits, int n, int limit) {
+        if (n == 0) return Collections.emptyList();
+        int maxScore = 0;
+        for (int i = 0; i < n; i++) maxScore = Math.max(maxScore, score(hits[i]));
+        List<Integer> result = new ArrayList<>(Math.min(limit, n));
+        for (int score = maxScore; score > 0 && result.size() < limit; score--) {
+            for (int i = n - 1; i >= 0 && result.size() < limit; i--) {
+                if (score(hits[i]) == score) result.add(id(hits[i]));
+            }
+        }
+        return result;
+    }
+
+    private static long hit(int id, int score) {
+        return ((long) id << 32) | score;
+    }
+
+    private static int id(long hit) {
+        return (int) (hit >> 32);
+    }
+
+    private static int score(long hit) {
+        return (int) hit;
+    }
+
+    private List<Match> lookup(String token) {
+        List<Match> result = new ArrayList<>();
+        if (token.length() < MIN_PREFIX_LENGTH) {       // 过短的查询词只做完整匹配
+            Postings postings = terms.get(token);
+            if (postings != null) result.add(new Match(postings, EXACT_WEIGHT));
+            return result;
+        }
+        NavigableMap<String, Postings> range = terms.subMap(token, true, token + Character.MAX_VALUE, false);
+        for (Map.Entry<String, Postings> entry : range.entrySet()) {   // 完整匹配的词项（若存在）总是范围中的第一个
+            if (result.size() >= MAX_PREFIX_TERMS) break;
+            result.add(new Match(entry.getValue(), entry.getKey().equals(token) ? EXACT_WEIGHT : PREFIX_WEIGHT));
+        }
+        return result;
+    }
+
+    private static int candidates(List<Match> matches) {
+        int n = 0;
+        for (Match match : matches) n += match.postings.size;
+        return n;
+    }
+
+    /**
+     * 分词：统一转小写，按非字母数字字符切分；中文（汉字）连续片段建索引时产生单字和二元组，
+     * 查询时只使用二元组（片段只有一个字时使用单字），这样查询短语能与标题中的相邻汉字对应
+     */
+    static Set<String> tokenize(String text, boolean indexing) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        String lower = text.toLowerCase();
+        int i = 0;
+        while (i < lower.length()) {
+            int c = lower.codePointAt(i);
+            if (isHan(c)) {
+                int start = i;
+                while (i < lower.length() && isHan(lower.codePointAt(i))) i += Character.charCount(lower.codePointAt(i));
+                addHanTokens(lower.substring(start, i), indexing, tokens);
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < lower.length()) {
+                    int d = lower.codePointAt(i);
+                    if (!Character.isLetterOrDigit(d) || isHan(d)) break;
+                    i += Character.charCount(d);
+                }
+                tokens.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addHanTokens(String run, boolean indexing, Set<String> tokens) {
+        int[] chars = run.codePoints().toArray();
+        if (chars.length == 1 || indexing) {
+            for (int c : chars) tokens.add(new String(Character.toChars(c)));
+        }
+        for (int i = 0; i + 1 < chars.length; i++) {
+            tokens.add(new String(chars, i, 2));
+        }
+    }
+
+    private static boolean isHan(int c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private static final class Match {
+        final Postings postings;
+        final int weight;
+
+        Match(Postings postings, int weight) {
+            this.postings = postings;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按 id 升序存放的 int 数组，避免装箱；插入/删除通过二分查找定位。term 与词典中的键是同一个字符串
+     */
+    static final class Postings {
+        final String term;
+        int[] ids = new int[2];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return false;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            if (size > 8 && size < ids.length / 4) ids = Arrays.copyOf(ids, size * 2);
+            return true;
+        }
+    }
+
+    /**
+     * 待办事项 id -> 它所在的 posting list：线性探测的开放寻址表，值为 null 的槽位为空
+     */
+    static final class DocTerms {
+        private int[] keys = new int[16];
+        private Postings[][] values = new Postings[16][];
+        int size;
+
+        void put(int id, Postings[] postings) {
+            if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+            int i = slot(id, keys.length);
+            while (values[i] != null && keys[i] != id) i = (i + 1) & (keys.length - 1);
+            if (values[i] == null) size++;
+            keys[i] = id;
+            values[i] = postings;
+        }
+
+        Postings[] remove(int id) {
+            final int mask = keys.length - 1;
+            int i = slot(id, keys.length);
+            while (values[i] != null && keys[i] != id) i = (i + 1) & mask;
+            Postings[] removed = values[i];
+            if (removed == null) return null;
+            // 后移删除：把探测链上后面的元素前移填补空位，不需要墓碑标记
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j], keys.length);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            values[i] = null;
+            size--;
+            if (keys.length > 16 && size * 8 < keys.length) resize(keys.length / 2);
+            return removed;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Postings[][] oldValues = values;
+            keys = new int[capacity];
+            values = new Postings[capacity][];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int slot(int id, int capacity) {
+            int h = id * 0x9E3779B9;       // 乘法散列，打散连续的 id
+            return (h ^ (h >>> 16)) & (capacity - 1);
+        }
+    }
+}
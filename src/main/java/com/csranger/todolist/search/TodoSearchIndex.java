@@ -0,0 +1,133 @@
+package com.csranger.todolist.search;
+
+import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.service.TodoService;
+import io.vertx.core.Future;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 待办事项标题的内存全文索引，每个清单一个 TitleIndex
+ * 清单的索引在第一次使用时（默认清单在启动时）通过 TodoService.scan 流式构建，之后随 insert/update/delete 增量更新。
+ * 至多保留 maxLists 个清单的索引，超出时淘汰最久未使用的（正在构建的除外）；空清单不保留索引，
+ * 因此搜索任意不存在的清单不会占用内存。被淘汰的清单在下次搜索时重新构建
+ * 非线程安全：只在所属 Verticle 的 event loop 中访问
+ * 注意：索引属于单个 Verticle 实例，只能看到经过该实例的写入。部署多个实例（或多个进程共用同一个存储）时，
+ * 其他实例的写入不会反映到本实例的索引中，搜索结果可能过期；此时需要配置 search.rebuild-interval，定期丢弃全部索引重新构建
+ */
+public class TodoSearchIndex {
+
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    private final TodoService source;
+    private final int maxLists;
+    private final LinkedHashMap<String, ListIndex> lists = new LinkedHashMap<>(16, 0.75f, true);     // 按访问顺序排列
+
+    public TodoSearchIndex(TodoService source, int maxLists) {
+        if (maxLists < 1) throw new IllegalArgumentException("Invalid search.max-lists: " + maxLists);
+        this.source = source;
+        this.maxLists = maxLists;
+    }
+
+    /**
+     * 确保清单的索引已经构建完成：未构建时启动一次流式扫描，构建中则等待同一次扫描完成
+     */
+    public Future<Void> ready(String listId) {
+        ListIndex list = lists.get(listId);
+        if (list == null) {
+            list = new ListIndex();
+            lists.put(listId, list);
+            evict();
+            build(listId, list);
+        }
+        if (list.waiters == null) return Future.succeededFuture();
+        // Future 只能设置一个 handler，因此每个等待者持有各自的 Future
+        Future<Void> waiter = Future.future();
+        list.waiters.add(waiter);
+        return waiter;
+    }
+
+    public Future<List<Integer>> search(String listId, String query, int limit) {
+        return ready(listId).map(v -> {
+            ListIndex list = lists.get(listId);
+            return list == null ? Collections.<Integer>emptyList() : list.index.search(query, limit);   // 空清单没有索引
+        });
+    }
+
+    public void put(String listId, Todo todo) {
+        ListIndex list = lists.get(listId);
+        if (list == null) return;           // 该清单的索引尚未构建，构建时会扫描到最新数据
+        list.index.put(todo.getId(), todo.getTitle());
+        if (list.writtenWhileBuilding != null) list.writtenWhileBuilding.add(todo.getId());
+    }
+
+    public void remove(String listId, int id) {
+        ListIndex list = lists.get(listId);
+        if (list == null) return;
+        list.index.remove(id);
+        if (list.writtenWhileBuilding != null) list.writtenWhileBuilding.add(id);
+        else if (list.index.isEmpty()) lists.remove(listId);
+    }
+
+    /**
+     * 丢弃清单的索引（例如清单被清空，或发生了无法增量同步的批量修改），下次使用时重新构建
+     */
+    public void invalidate(String listId) {
+        lists.remove(listId);
+    }
+
+    /**
+     * 丢弃全部清单的索引，各清单在下次使用时重新构建
+     */
+    public void invalidateAll() {
+        lists.clear();
+    }
+
+    private void build(String listId, ListIndex list) {
+        source.scan(listId, SCAN_BATCH_SIZE, batch -> {
+            if (lists.get(listId) != list) return Future.failedFuture("Index invalidated while building");
+            for (Todo todo : batch) {
+                // 扫描期间被写入或删除过的待办事项以增量更新为准，忽略扫描读到的旧数据
+                if (!list.writtenWhileBuilding.contains(todo.getId())) list.index.put(todo.getId(), todo.getTitle());
+            }
+            return Future.succeededFuture();
+        }).setHandler(ar -> {
+            List<Future<Void>> waiters = list.waiters;
+            list.waiters = null;
+            list.writtenWhileBuilding = null;
+            for (Future<Void> waiter : waiters) {
+                if (ar.succeeded()) waiter.complete();
+                else if (lists.get(listId) != list) ready(listId).setHandler(waiter);   // 构建期间索引被废弃，改为等待重新构建
+                else waiter.fail(ar.cause());
+            }
+            if (lists.get(listId) == list && (ar.failed() || list.index.isEmpty())) {
+                lists.remove(listId);       // 构建失败时下次使用时重试；空清单不保留索引
+            }
+        });
+    }
+
+    // 当前保留索引的清单数
+    int size() {
+        return lists.size();
+    }
+
+    // 超出 maxLists 时按最久未使用的顺序淘汰；正在构建的索引有等待者，跳过（暂时超出上限）
+    private void evict() {
+        Iterator<ListIndex> eldest = lists.values().iterator();
+        while (lists.size() > maxLists && eldest.hasNext()) {
+            if (eldest.next().waiters == null) eldest.remove();
+        }
+    }
+
+    private static final class ListIndex {
+        final TitleIndex index = new TitleIndex();
+        List<Future<Void>> waiters = new ArrayList<>();         // 构建完成后置为 null
+        Set<Integer> writtenWhileBuilding = new HashSet<>();
+    }
+}
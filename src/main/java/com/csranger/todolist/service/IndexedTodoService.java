@@ -0,0 +1,116 @@
+package com.csranger.todolist.service;
+
+import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.search.TodoSearchIndex;
+import io.vertx.core.Future;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * 装饰器：所有操作委托给实际的存储服务，写操作成功后同步更新标题全文索引
+ */
+public class IndexedTodoService implements TodoService {
+
+    private final TodoService delegate;
+    private final TodoSearchIndex index;
+
+    public IndexedTodoService(TodoService delegate, TodoSearchIndex index) {
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public Future<Boolean> initData() {
+        return delegate.initData();
+    }
+
+    @Override
+    public Future<Void> warmUp() {
+        return delegate.warmUp();
+    }
+
+    @Override
+    public Future<Void> close() {
+        return delegate.close();
+    }
+
+    @Override
+    public Future<Optional<Todo>> getCertain(String listId, String todoId) {
+        return delegate.getCertain(listId, todoId);
+    }
+
+    @Override
+    public Future<List<Todo>> getAll(String listId) {
+        return delegate.getAll(listId);
+    }
+
+    @Override
+    public Future<Boolean> insert(String listId, Todo todo) {
+        return delegate.insert(listId, todo).map(r -> {
+            if (r) index.put(listId, todo);
+            return r;
+        });
+    }
+
+    @Override
+    public Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion) {
+        return delegate.update(listId, todoId, newTodo, expectedVersion).map(todo -> {
+            if (todo != null) index.put(listId, todo);
+            return todo;
+        });
+    }
+
+    @Override
+    public Future<Boolean> delete(String listId, String todoId, Integer expectedVersion) {
+        return delegate.delete(listId, todoId, expectedVersion).map(r -> {
+            if (r && isInteger(todoId)) index.remove(listId, Integer.parseInt(todoId));
+            return r;
+        });
+    }
+
+    @Override
+    public Future<Boolean> deleteAll(String listId) {
+        return delegate.deleteAll(listId).map(r -> {
+            if (r) index.invalidate(listId);
+            return r;
+        });
+    }
+
+    // 只从索引中移除实际被删除的待办事项；setCompletedWhere 不改变标题，索引无需更新
+    @Override
+    public Future<List<Integer>> deleteWhere(String listId, boolean completed) {
+        return delegate.deleteWhere(listId, completed).map(ids -> {
+            for (Integer id : ids) index.remove(listId, id);
+            return ids;
+        });
+    }
+
+    @Override
+    public Future<Integer> setCompletedWhere(String listId, Boolean completed, boolean value) {
+        return delegate.setCompletedWhere(listId, completed, value);
+    }
+
+    @Override
+    public Future<Void> scan(String listId, int batchSize, Function<List<Todo>, Future<Void>> batchHandler) {
+        return delegate.scan(listId, batchSize, batchHandler);
+    }
+
+    @Override
+    public Future<Integer> insertBatch(String listId, List<Todo> todos) {
+        return delegate.insertBatch(listId, todos).map(n -> {
+            for (Todo todo : todos) index.put(listId, todo);
+            return n;
+        });
+    }
+
+    private static boolean isInteger(String id) {
+        try {
+            Integer.parseInt(id);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;           // 非数字的 id 不可能存在于索引中
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.csranger.todolist.service;
 
 import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.order.OrderKeys;
+import com.csranger.todolist.trace.Tracer;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -9,9 +12,14 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import io.vertx.ext.sql.SQLRowStream;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class JdbcTodoService implements TodoService {
@@ -21,27 +29,66 @@ public class JdbcTodoService implements TodoService {
     private final JDBCClient client;
 
 
-    // SQL
-    private static final String SQL_CREATE = "CREATE TABLE IF NOT EXISTS `todo` (\n" +
-            "  `id` int(11) NOT NULL AUTO_INCREMENT,\n" +
+    // SQL（包内可见，VirtualThreadJdbcTodoService 共用同一套语句）
+    static final String SQL_CREATE = "CREATE TABLE IF NOT EXISTS `todo` (\n" +
+            "  `id` int(11) NOT NULL,\n" +
             "  `title` varchar(255) DEFAULT NULL,\n" +
             "  `completed` tinyint(1) DEFAULT NULL,\n" +
             "  `order` int(11) DEFAULT NULL,\n" +
             "  `url` varchar(255) DEFAULT NULL,\n" +
-            "  PRIMARY KEY (`id`) )";
-    private static final String SQL_INSERT = "INSERT INTO `todo` " +
-            "(`id`, `title`, `completed`, `order`, `url`) VALUES (?, ?, ?, ?, ?)";
-    private static final String SQL_QUERY = "SELECT * FROM todo WHERE id = ?";
-    private static final String SQL_QUERY_ALL = "SELECT * FROM todo";
-    private static final String SQL_UPDATE = "UPDATE `todo`\n" +
+            "  `list_id` varchar(64) NOT NULL DEFAULT 'default',\n" +
+            "  `version` int(11) NOT NULL DEFAULT 0,\n" +
+            "  `rank` varchar(64) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,\n" +
+            "  PRIMARY KEY (`list_id`, `id`),\n" +
+            "  KEY `idx_list_rank` (`list_id`, `rank`) )";
+    // 兼容旧版本创建的 todo 表：补充 list_id 列以及 (list_id, id) 复合索引（随后由 SQL_LIST_PRIMARY_KEY 换成主键）；列已存在时执行失败，忽略即可
+    static final String SQL_ADD_LIST_ID = "ALTER TABLE `todo`\n" +
+            "ADD COLUMN `list_id` varchar(64) NOT NULL DEFAULT 'default',\n" +
+            "ADD KEY `idx_list_id` (`list_id`, `id`)";
+    // 同上：id 只在清单内唯一，主键改为 (list_id, id)，原来的 idx_list_id 随之多余；id 由服务分配，不再需要 AUTO_INCREMENT
+    // （MySQL 要求自增列是某个索引的第一列）。已经迁移过的表上 DROP KEY 失败，整条语句不生效，忽略即可
+    static final String SQL_LIST_PRIMARY_KEY = "ALTER TABLE `todo`\n" +
+            "MODIFY `id` int(11) NOT NULL,\n" +
+            "DROP PRIMARY KEY,\n" +
+            "ADD PRIMARY KEY (`list_id`, `id`),\n" +
+            "DROP KEY `idx_list_id`";
+    // 同上：补充乐观并发控制使用的 version 列，旧数据的版本号为 0
+    static final String SQL_ADD_VERSION = "ALTER TABLE `todo` ADD COLUMN `version` int(11) NOT NULL DEFAULT 0";
+    // 同上：补充排序键 rank 列及 (list_id, rank) 索引；排序键按字节比较，因此使用 ascii_bin
+    // 旧数据的 rank 保持 NULL，不需要回填：读取时按 OrderKeys.LAST 排序（见 SQL_QUERY_ALL）
+    static final String SQL_ADD_RANK = "ALTER TABLE `todo`\n" +
+            "ADD COLUMN `rank` varchar(64) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,\n" +
+            "ADD KEY `idx_list_rank` (`list_id`, `rank`)";
+    static final String SQL_INSERT = "INSERT INTO `todo` " +
+            "(`id`, `title`, `completed`, `order`, `url`, `list_id`, `version`, `rank`) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // 批量导入使用：同一清单中 id 已存在时覆盖原有记录；主键为 (list_id, id)，不会改写其他清单的数据，也从不更新 list_id
+    static final String SQL_UPSERT = SQL_INSERT + " ON DUPLICATE KEY UPDATE " +
+            "`title` = VALUES(`title`), `completed` = VALUES(`completed`), `order` = VALUES(`order`), " +
+            "`url` = VALUES(`url`), `version` = VALUES(`version`), `rank` = VALUES(`rank`)";
+    static final String SQL_QUERY = "SELECT * FROM todo WHERE list_id = ? AND id = ?";
+    // 没有排序键的待办事项（rank 为 NULL，在 ORDER BY 中本会排在最前）按 OrderKeys.LAST 排序，与 TodoReorderer.BY_RANK 一致
+    static final String SQL_QUERY_ALL = "SELECT * FROM todo WHERE list_id = ? ORDER BY COALESCE(`rank`, '" + OrderKeys.LAST + "'), `id`";
+    static final String SQL_UPDATE = "UPDATE `todo`\n" +
             "SET `id` = ?,\n" +
             "`title` = ?,\n" +
             "`completed` = ?,\n" +
             "`order` = ?,\n" +
-            "`url` = ?\n" +
-            "WHERE `id` = ?;";
-    private static final String SQL_DELETE = "DELETE FROM `todo` WHERE `id` = ?";
-    private static final String SQL_DELETE_ALL = "DELETE FROM `todo`";
+            "`url` = ?,\n" +
+            "`rank` = ?,\n" +
+            "`version` = ?\n" +
+            "WHERE `list_id` = ? AND `id` = ? AND `version` = ?;";    // 比较并交换：版本号不一致时更新 0 行
+    static final String SQL_DELETE = "DELETE FROM `todo` WHERE `list_id` = ? AND `id` = ?";
+    static final String SQL_DELETE_VERSION = SQL_DELETE + " AND `version` = ?";
+    static final String SQL_DELETE_ALL = "DELETE FROM `todo` WHERE `list_id` = ?";
+    // 批量操作：旧数据的 completed 可能为 NULL，与 Todo.isCompleted() 一致视为未完成
+    // 清除已完成需要返回被删除的 id：在一个事务中先锁定并读出符合条件的 id，再用一条带同样条件的 DELETE 删除
+    // （InnoDB 默认的 REPEATABLE READ 下 SELECT ... FOR UPDATE 锁住扫描到的行及间隙，两条语句看到的是同一组行）
+    static final String SQL_QUERY_IDS_WHERE = "SELECT `id` FROM `todo` WHERE `list_id` = ? AND IFNULL(`completed`, 0) = ? FOR UPDATE";
+    static final String SQL_DELETE_WHERE = SQL_DELETE_ALL + " AND IFNULL(`completed`, 0) = ?";
+    // 与 Redis 一致，只修改 completed 确实改变的行：返回的条数与版本号的变化都只计入这些行
+    static final String SQL_SET_COMPLETED = "UPDATE `todo` SET `completed` = ?, `version` = `version` + 1 " +
+            "WHERE `list_id` = ? AND IFNULL(`completed`, 0) <> ?";
+    static final String SQL_SET_COMPLETED_WHERE = SQL_SET_COMPLETED + " AND IFNULL(`completed`, 0) = ?";
 
 
     public JdbcTodoService(Vertx vertx, JsonObject config) {
@@ -60,12 +107,16 @@ public class JdbcTodoService implements TodoService {
                 final SQLConnection connection = res.result();
                 connection.execute(SQL_CREATE, create -> {
                     if (create.succeeded()) {
-                        result.complete(true);      // 执行 SQL 语句成功
+                        connection.execute(SQL_ADD_LIST_ID, alter -> connection.execute(SQL_LIST_PRIMARY_KEY, k ->
+                                connection.execute(SQL_ADD_VERSION, v -> connection.execute(SQL_ADD_RANK, r -> {
+                                    result.complete(true);      // 执行 SQL 语句成功（列已存在时 alter 失败，忽略）
+                                    connection.close();         // 最后一定要关闭数据库连接
+                                }))));
                     }
                     else {
                         result.fail(create.cause());                          // 执行 SQL 语句失败
+                        connection.close();
                     }
-                    connection.close();         // 最后一定要关闭数据库连接
                 });
 
             } else {
@@ -75,25 +126,56 @@ public class JdbcTodoService implements TodoService {
         return result;
     }
 
+    // 同时借出 max_pool_size 个连接再一起归还，迫使连接池把连接全部建立好
+    @Override
+    public Future<Void> warmUp() {
+        List<Future<SQLConnection>> connections = new ArrayList<>();
+        for (int i = 0; i < config.getInteger("max_pool_size", 15); i++) {
+            Future<SQLConnection> connection = Future.future();
+            client.getConnection(connection);
+            connections.add(connection);
+        }
+        @SuppressWarnings("rawtypes")   // Vert.x 3.6 的 CompositeFuture.join 只接受 List<Future>
+        List<Future> all = new ArrayList<>(connections);
+        Future<Void> result = Future.future();
+        CompositeFuture.join(all).setHandler(ar -> {
+            for (Future<SQLConnection> connection : connections) {
+                if (connection.succeeded()) connection.result().close();
+            }
+            if (ar.succeeded()) result.complete();
+            else result.fail(ar.cause());
+        });
+        return result;
+    }
+
+    // 共享的 JDBCClient 按引用计数关闭，最后一个使用者关闭时才真正关闭连接池
+    @Override
+    public Future<Void> close() {
+        Future<Void> result = Future.future();
+        client.close(result);
+        return result;
+    }
+
     // 由于每一个数据库操作都需要获取数据库连接，
     // 因此我们来包装一个返回Handler<AsyncResult<SQLConnection>>的方法，在此回调中可以直接使用数据库连接，可以减少一些代码量
     // 相当于 TodoVerticle 里的 resultHandler 方法
     // 这里的 Handler<SQLConnection> handler 左右就同于 Consumer<T> consumer，当异步操作成功，将异步操作结果传入，并执行 handler 的唯一 handle 方法
-    private Handler<AsyncResult<SQLConnection>> connHandler(Future future, Handler<SQLConnection> handler) {
-        return res -> {
+    // 从发起 getConnection 到取得连接的时间记为 pool checkout span
+    private Handler<AsyncResult<SQLConnection>> connHandler(Future<?> future, Handler<SQLConnection> handler) {
+        return Tracer.traced("pool checkout", res -> {
             if (res.succeeded()) {          // 异步操作成功，将异步操作结果传入
                 final SQLConnection connection = res.result();
                 handler.handle(connection);
             } else
                 future.fail(res.cause());   // 异步操作失败，通过 future 传入失败状态
-        };
+        });
     }
 
     @Override
-    public Future<Optional<Todo>> getCertain(String todoID) {
+    public Future<Optional<Todo>> getCertain(String listId, String todoID) {
         Future<Optional<Todo>> result = Future.future();
         client.getConnection(connHandler(result, connection -> {
-            connection.queryWithParams(SQL_QUERY, new JsonArray().add(todoID), res -> {
+            connection.queryWithParams(SQL_QUERY, new JsonArray().add(listId).add(todoID), Tracer.traced("sql", SQL_QUERY, res -> {
                 if (res.succeeded()) {     // 查询过程成功
                     List<JsonObject> list = res.result().getRows();
                     if (list == null || list.isEmpty())
@@ -104,17 +186,17 @@ public class JdbcTodoService implements TodoService {
                     result.fail(res.cause());
                 }
                 connection.close();
-            });
+            }));
         }));
 
         return result;
     }
 
     @Override
-    public Future<List<Todo>> getAll() {
+    public Future<List<Todo>> getAll(String listId) {
         Future<List<Todo>> result = Future.future();
         client.getConnection(connHandler(result, connection -> {
-            connection.query(SQL_QUERY_ALL, res -> {
+            connection.queryWithParams(SQL_QUERY_ALL, new JsonArray().add(listId), Tracer.traced("sql", SQL_QUERY_ALL, res -> {
                 if (res.succeeded()) {          // 查询过程成功
                     List<Todo> todos = res.result().getRows().stream().map(Todo::new).collect(Collectors.toList());
                     result.complete(todos);
@@ -124,82 +206,248 @@ public class JdbcTodoService implements TodoService {
                     result.fail(res.cause());
                 }
                 connection.close();
-            });
+            }));
         }));
         return result;
     }
 
+    // INSERT 语句的参数（本质上是 List）；JsonArray.add 不接受 null，而 order、url 等字段可能为空，因此直接由 List 构造
+    private JsonArray insertParams(String listId, Todo todo) {
+        return new JsonArray(Arrays.asList(todo.getId(), todo.getTitle(), todo.isCompleted(),
+                todo.getOrder(), todo.getUrl(), listId, todo.getVersion(), todo.getRank()));
+    }
+
     @Override
-    public Future<Boolean> insert(Todo todo) {
+    public Future<Boolean> insert(String listId, Todo todo) {
         Future<Boolean> result = Future.future();
         client.getConnection(connHandler(result, connection -> {
-            connection.updateWithParams(SQL_INSERT, new JsonArray()      // 本质上是 List
-                    .add(todo.getId())
-                    .add(todo.getTitle())
-                    .add(todo.isCompleted())
-                    .add(todo.getOrder())
-                    .add(todo.getUrl()), res -> {
+            connection.updateWithParams(SQL_INSERT, insertParams(listId, todo), Tracer.traced("sql", SQL_INSERT, res -> {
                 if (res.succeeded()) result.complete(true);
                 else result.fail(res.cause());
                 connection.close();
-            });
+            }));
         }));
         return result;
     }
 
     @Override
-    public Future<Todo> update(String todoId, Todo newTodo) {
-        Future<Todo> result = Future.future();
-        client.getConnection(connHandler(result, connection -> {
-            // 首先查找此 id 对应的待办事项是否存在
-            this.getCertain(todoId).setHandler(res -> {
-                if (res.failed()) result.fail(res.cause());     // 1。查找过程失败
-                else {                                          // 2。查找过程成功
-                    Optional<Todo> oldTodo = res.result();
-                    if (!oldTodo.isPresent()) {    // 2。1查找结果：此 id 对应的待办事项不存在
-                        result.complete(null);
-                    }
-                    // 2。2查找结果：此 id 对应的待办事项存在
-                    Todo fnTodo = oldTodo.get().merge(newTodo);
-                    // 接着对该 id 对应的待办事项进行 update
-                    connection.updateWithParams(SQL_UPDATE, new JsonArray().add(todoId)
-                            .add(fnTodo.getTitle())
-                            .add(fnTodo.isCompleted())
-                            .add(fnTodo.getOrder())
-                            .add(fnTodo.getUrl())
-                            .add(todoId), r -> {
-                        if (r.succeeded()) result.complete(fnTodo);      // update 执行成功
-                        else result.fail(res.cause());
-                        connection.close();
-                    });
+    public Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion) {
+        return update(listId, todoId, newTodo, expectedVersion, UPDATE_MAX_ATTEMPTS);
+    }
+
+    private Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion, int attempts) {
+        // 首先查找此 id 对应的待办事项是否存在（getCertain 使用自己的连接并立即归还），之后再获取连接执行 update
+        // 注意不能在持有连接时再通过 getCertain 获取第二个连接：并发高时所有连接都被等待中的 update 占用，连接池耗尽而死锁
+        return this.getCertain(listId, todoId).compose(oldTodo -> {
+            if (!oldTodo.isPresent()) {    // 1。查找结果：此 id 对应的待办事项不存在
+                return Future.succeededFuture();
+            }
+            final int version = oldTodo.get().getVersion();
+            if (expectedVersion != null && expectedVersion != version) {    // 客户端基于旧版本修改
+                return Future.failedFuture(new VersionConflictException(todoId));
+            }
+            // 2。查找结果：此 id 对应的待办事项存在，接着对该 id 对应的待办事项进行 update
+            // 两次连接之间可能有其他请求写入，因此 UPDATE 带上读取到的版本号，更新 0 行说明读到的数据已过期
+            Todo fnTodo = oldTodo.get().merge(newTodo);
+            fnTodo.setVersion(version + 1);
+            Future<Integer> updated = Future.future();
+            client.getConnection(connHandler(updated, connection -> {
+                connection.updateWithParams(SQL_UPDATE, new JsonArray(Arrays.asList(todoId,
+                        fnTodo.getTitle(),
+                        fnTodo.isCompleted(),
+                        fnTodo.getOrder(),
+                        fnTodo.getUrl(),
+                        fnTodo.getRank(),
+                        fnTodo.getVersion(),
+                        listId,
+                        todoId,
+                        version)), Tracer.traced("sql", SQL_UPDATE, r -> {
+                    if (r.succeeded()) updated.complete(r.result().getUpdated());      // update 执行成功
+                    else updated.fail(r.cause());
+                    connection.close();
+                }));
+            }));
+            return updated.compose(n -> {
+                if (n > 0) return Future.succeededFuture(fnTodo);
+                if (expectedVersion != null || attempts <= 1) {
+                    return Future.failedFuture(new VersionConflictException(todoId));
                 }
+                return update(listId, todoId, newTodo, null, attempts - 1);  // 未限定版本：重新读取、合并后重试（期间被删除时返回 null）
             });
-        }));
-        return result;
+        });
     }
 
     @Override
-    public Future<Boolean> delete(String todoId) {
+    public Future<Boolean> delete(String listId, String todoId, Integer expectedVersion) {
         Future<Boolean> result = Future.future();
+        if (expectedVersion != null) {
+            // 限定版本的删除：版本不一致或待办事项已不存在时删除 0 行，都视为冲突
+            client.getConnection(connHandler(result, connection -> {
+                connection.updateWithParams(SQL_DELETE_VERSION, new JsonArray().add(listId).add(todoId).add(expectedVersion), Tracer.traced("sql", SQL_DELETE_VERSION, res -> {
+                    if (res.failed()) result.fail(res.cause());
+                    else if (res.result().getUpdated() > 0) result.complete(true);
+                    else result.fail(new VersionConflictException(todoId));
+                    connection.close();
+                }));
+            }));
+            return result;
+        }
         client.getConnection(connHandler(result, connection -> {
-            connection.updateWithParams(SQL_DELETE, new JsonArray().add(todoId), res -> {
+            connection.updateWithParams(SQL_DELETE, new JsonArray().add(listId).add(todoId), Tracer.traced("sql", SQL_DELETE, res -> {
                 if (res.succeeded()) result.complete(true);     // delete 执行成功，返回true
                 else result.complete(false);                    // delete 执行失败，返回false
                 connection.close();
-            });
+            }));
         }));
         return result;
     }
 
     @Override
-    public Future<Boolean> deleteAll() {
+    public Future<Boolean> deleteAll(String listId) {
         Future<Boolean> result = Future.future();
         client.getConnection(connHandler(result, connection -> {
-            connection.update(SQL_DELETE_ALL, res -> {
+            connection.updateWithParams(SQL_DELETE_ALL, new JsonArray().add(listId), Tracer.traced("sql", SQL_DELETE_ALL, res -> {
                 if (res.succeeded()) result.complete(true);     // delete 执行成功，返回true
                 else result.complete(false);                    // delete 执行失败，返回false
                 connection.close();
+            }));
+        }));
+        return result;
+    }
+
+    @Override
+    public Future<List<Integer>> deleteWhere(String listId, boolean completed) {
+        return inTransaction(connection -> {
+            Future<List<Integer>> ids = Future.future();
+            connection.queryWithParams(SQL_QUERY_IDS_WHERE, new JsonArray().add(listId).add(completed), Tracer.traced("sql", SQL_QUERY_IDS_WHERE, res -> {
+                if (res.succeeded()) ids.complete(res.result().getResults().stream().map(row -> row.getInteger(0)).collect(Collectors.toList()));
+                else ids.fail(res.cause());
+            }));
+            return ids.compose(deleted -> {
+                if (deleted.isEmpty()) return Future.succeededFuture(deleted);
+                Future<List<Integer>> done = Future.future();
+                connection.updateWithParams(SQL_DELETE_WHERE, new JsonArray().add(listId).add(completed), Tracer.traced("sql", SQL_DELETE_WHERE, res -> {
+                    if (res.succeeded()) done.complete(deleted);
+                    else done.fail(res.cause());
+                }));
+                return done;
             });
+        });
+    }
+
+    @Override
+    public Future<Integer> setCompletedWhere(String listId, Boolean completed, boolean value) {
+        return completed == null
+                ? updateCount(SQL_SET_COMPLETED, new JsonArray().add(value).add(listId).add(value))
+                : updateCount(SQL_SET_COMPLETED_WHERE, new JsonArray().add(value).add(listId).add(value).add(completed));
+    }
+
+    // 执行一条增删改语句，返回受影响的行数
+    private Future<Integer> updateCount(String sql, JsonArray params) {
+        Future<Integer> result = Future.future();
+        client.getConnection(connHandler(result, connection -> {
+            connection.updateWithParams(sql, params, Tracer.traced("sql", sql, res -> {
+                if (res.succeeded()) result.complete(res.result().getUpdated());
+                else result.fail(res.cause());
+                connection.close();
+            }));
+        }));
+        return result;
+    }
+
+    // 在一个事务中执行 work：work 返回的 Future 成功时提交，失败时回滚；结束后恢复自动提交再归还连接
+    private <T> Future<T> inTransaction(Function<SQLConnection, Future<T>> work) {
+        Future<T> result = Future.future();
+        client.getConnection(connHandler(result, connection -> connection.setAutoCommit(false, begin -> {
+            if (begin.failed()) {
+                result.fail(begin.cause());
+                connection.close();
+                return;
+            }
+            work.apply(connection).setHandler(ar -> {
+                Handler<AsyncResult<Void>> end = e -> connection.setAutoCommit(true, reset -> {
+                    if (ar.failed()) result.fail(ar.cause());
+                    else if (e.failed()) result.fail(e.cause());
+                    else result.complete(ar.result());
+                    connection.close();
+                });
+                if (ar.succeeded()) connection.commit(end);
+                else connection.rollback(end);
+            });
+        })));
+        return result;
+    }
+
+    // 使用游标（fetchSize）流式读取结果集，攒够 batchSize 行时暂停读取，等 batchHandler 处理完再继续
+    // MySQL 需要在连接 url 中开启 useCursorFetch=true，fetchSize 才会生效，否则驱动会一次性读入整个结果集
+    @Override
+    public Future<Void> scan(String listId, int batchSize, Function<List<Todo>, Future<Void>> batchHandler) {
+        Future<Void> result = Future.future();
+        client.getConnection(connHandler(result, connection -> {
+            connection.setOptions(new SQLOptions().setFetchSize(batchSize));
+            connection.queryStreamWithParams(SQL_QUERY_ALL, new JsonArray().add(listId), res -> {
+                if (res.failed()) {
+                    result.fail(res.cause());
+                    connection.close();
+                    return;
+                }
+                final SQLRowStream stream = res.result();
+                final List<String> columns = stream.columns();
+                final List<Todo> batch = new ArrayList<>(batchSize);
+                stream.exceptionHandler(e -> {
+                    if (result.tryFail(e)) connection.close();
+                });
+                stream.handler(row -> {
+                    batch.add(new Todo(toJsonObject(columns, row)));
+                    if (batch.size() >= batchSize) {
+                        stream.pause();
+                        handleBatch(batch, batchHandler).setHandler(h -> {
+                            if (h.succeeded()) stream.resume();
+                            else if (result.tryFail(h.cause())) stream.close(v -> connection.close());
+                        });
+                    }
+                });
+                stream.endHandler(v -> handleBatch(batch, batchHandler).setHandler(h -> {
+                    if (h.succeeded()) result.tryComplete();
+                    else result.tryFail(h.cause());
+                    connection.close();
+                }));
+            });
+        }));
+        return result;
+    }
+
+    // 将当前批次交给 batchHandler，并清空批次以便复用
+    private Future<Void> handleBatch(List<Todo> batch, Function<List<Todo>, Future<Void>> batchHandler) {
+        if (batch.isEmpty()) return Future.succeededFuture();
+        List<Todo> todos = new ArrayList<>(batch);
+        batch.clear();
+        return batchHandler.apply(todos);
+    }
+
+    private JsonObject toJsonObject(List<String> columns, JsonArray row) {
+        JsonObject json = new JsonObject();
+        for (int i = 0; i < columns.size(); i++) {
+            json.put(columns.get(i), row.getValue(i));
+        }
+        return json;
+    }
+
+    // 一批待办事项通过 JDBC batch 一次提交（MySQL 需开启 rewriteBatchedStatements=true 才会合并成多值 INSERT）
+    @Override
+    public Future<Integer> insertBatch(String listId, List<Todo> todos) {
+        if (todos.isEmpty()) return Future.succeededFuture(0);
+        Future<Integer> result = Future.future();
+        List<JsonArray> params = new ArrayList<>(todos.size());
+        for (Todo todo : todos) {
+            params.add(insertParams(listId, todo));
+        }
+        client.getConnection(connHandler(result, connection -> {
+            connection.batchWithParams(SQL_UPSERT, params, Tracer.traced("sql", SQL_UPSERT, res -> {
+                if (res.succeeded()) result.complete(todos.size());
+                else result.fail(res.cause());
+                connection.close();
+            }));
         }));
         return result;
     }
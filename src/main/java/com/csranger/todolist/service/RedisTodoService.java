@@ -2,16 +2,26 @@ package com.csranger.todolist.service;
 
 import com.csranger.todolist.Constants;
 import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.order.TodoReorderer;
+import com.csranger.todolist.trace.Tracer;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
-import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.redis.RedisClient;
 import io.vertx.redis.RedisOptions;
+import io.vertx.redis.Script;
+import io.vertx.redis.op.ScanOptions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +31,57 @@ public class RedisTodoService implements TodoService {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(RedisTodoService.class);
 
+    // 比较并交换：只有 hash 中待办事项的版本号等于 ARGV[2] 时才写入（或删除），整个脚本在 Redis 中原子执行
+    // 返回 {1} 成功，{0} 版本不一致，{-1} 待办事项不存在；没有 version 字段的旧数据视为版本 0
+    // （Lua 脚本返回 table，RedisClient 才能把结果解析成 JsonArray）
+    private static final String CAS_CHECK = "local cur = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "if not cur then return {-1} end\n" +
+            "local v = cjson.decode(cur)['version']\n" +
+            "if type(v) ~= 'number' then v = 0 end\n" +
+            "if v ~= tonumber(ARGV[2]) then return {0} end\n";
+    private static final Script CAS_UPDATE = Script.create(CAS_CHECK +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+            "return {1}");
+    private static final Script CAS_DELETE = Script.create(CAS_CHECK +
+            "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "return {1}");
+    // 批量操作：每次执行脚本只处理一批 HSCAN 的结果，返回 {下一个游标, 受影响条数}，清单内容不会传回 JVM（BULK_DELETE 另外返回被删除的 id）；
+    // 分批执行避免单个脚本长时间阻塞 Redis。脚本中先执行 HSCAN（非确定性命令）再写入，需要 replicate_commands 按效果复制
+    // ARGV[3] 为 completed 过滤条件（'true' / 'false'，'' 表示不过滤）；旧数据没有 completed 时视为未完成
+    private static final String BULK_SCAN = "redis.replicate_commands()\n" +
+            "local page = redis.call('HSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])\n" +
+            "local entries = page[2]\n" +
+            "local n = 0\n" +
+            "local ids = {}\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  local todo = cjson.decode(entries[i + 1])\n" +
+            "  if ARGV[3] == '' or tostring(todo['completed'] == true) == ARGV[3] then\n";
+    // HSCAN 重复返回的元素第二次 HDEL 时返回 0，不会重复计入
+    private static final Script BULK_DELETE = Script.create(BULK_SCAN +
+            "    if redis.call('HDEL', KEYS[1], entries[i]) == 1 then\n" +
+            "      n = n + 1\n" +
+            "      ids[#ids + 1] = entries[i]\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return {page[1], n, ids}");
+    // ARGV[4] 为新的 completed，只改写 completed 确实改变的待办事项，写回时同样去掉旧格式中的 url；
+    // HSCAN 在 rehash 期间可能重复返回同一元素，第二次返回时它已经是新值，不会重复计入，版本号也不会多加一
+    private static final Script BULK_SET_COMPLETED = Script.create(BULK_SCAN +
+            "    if (todo['completed'] == true) ~= (ARGV[4] == 'true') then\n" +
+            "      todo['completed'] = ARGV[4] == 'true'\n" +
+            "      todo['version'] = (type(todo['version']) == 'number' and todo['version'] or 0) + 1\n" +
+            "      todo['url'] = nil\n" +
+            "      redis.call('HSET', KEYS[1], entries[i], cjson.encode(todo))\n" +
+            "      n = n + 1\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return {page[1], n}");
+    private static final int BULK_BATCH_SIZE = 500;
+    private static final long CAS_OK = 1;
+    private static final long CAS_MISSING = -1;
+
     private final Vertx vertx;
     private final RedisOptions config;
     private final RedisClient redis;
@@ -33,85 +94,245 @@ public class RedisTodoService implements TodoService {
 
     @Override
     public Future<Boolean> initData() {
-        // initData插入的待办事项的url没有"localhost/",因为没有wrapObject
-        return this.insert(new Todo(Math.abs(new java.util.Random().nextInt()),
-                "Something to do...", false, 1, "todo/ex"));
+        return this.insert(Constants.DEFAULT_LIST_ID, new Todo(Math.abs(new java.util.Random().nextInt()),
+                "Something to do...", false, 1, null));
     }
 
+    // RedisClient 只有一个连接：确认连接已建立，并把 Lua 脚本预先加载到 Redis 的脚本缓存中，之后的 EVALSHA 不再回退为 EVAL
+    @Override
+    public Future<Void> warmUp() {
+        @SuppressWarnings("rawtypes")   // Vert.x 3.6 的 CompositeFuture.all 只接受 List<Future>
+        List<Future> loaded = new ArrayList<>();
+        for (Script script : Arrays.asList(CAS_UPDATE, CAS_DELETE, BULK_DELETE, BULK_SET_COMPLETED)) {
+            Future<String> sha = Future.future();
+            redis.scriptLoad(script.getScript(), sha);
+            loaded.add(sha);
+        }
+        return CompositeFuture.all(loaded).mapEmpty();
+    }
 
     @Override
-    public Future<Optional<Todo>> getCertain(String todoID) {
+    public Future<Void> close() {
+        Future<Void> result = Future.future();
+        redis.close(result);
+        return result;
+    }
+
+    /**
+     * 存储格式：紧凑（无缩进）的 JSON，并省略可以推导出来的字段：
+     * url 在响应时由请求推导，没有排序键时不存储 rank
+     * 旧格式（encodePrettily，带完整 url）的数据仍然可以直接读取，在下一次写入时自动转换为新格式
+     */
+    static String encode(Todo todo) {
+        JsonObject json = todo.toJson();
+        json.remove("url");
+        return json.encode();
+    }
+
+
+    @Override
+    public Future<Optional<Todo>> getCertain(String listId, String todoID) {
         Future<Optional<Todo>> result = Future.future();
-        redis.hget(Constants.REDIS_TODO_KEY, todoID, ar -> {
+        final String key = Constants.redisTodoKey(listId);
+        redis.hget(key, todoID, Tracer.traced("redis HGET", key, ar -> {
             if (ar.succeeded()) {
                 result.complete(Optional.ofNullable(ar.result() == null ? null : new Todo(ar.result())));
             } else {
                 result.fail(ar.cause());
             }
-        });
+        }));
         return result;
     }
 
     @Override
-    public Future<List<Todo>> getAll() {
+    public Future<List<Todo>> getAll(String listId) {
         Future<List<Todo>> result = Future.future();
-        redis.hvals(Constants.REDIS_TODO_KEY, ar -> {
-            if (ar.succeeded())        // ar.result 返回的是 jsonArray：List<Object>
-                result.complete(ar.result()
+        final String key = Constants.redisTodoKey(listId);
+        // HVALS 总是读出整个清单，直接在内存中按 rank 排序，不再额外维护一个需要与每次写入保持同步的有序集合
+        redis.hvals(key, Tracer.traced("redis HVALS", key, ar -> {
+            if (ar.succeeded()) {       // ar.result 返回的是 jsonArray：List<Object>
+                final long start = System.nanoTime();
+                List<Todo> todos = ar.result()
                         .stream()
                         .map(x -> new Todo((String) x))
-                        .collect(Collectors.toList()));    // 转变成 List<Todo>
-            else result.fail(ar.cause());
-        });
+                        .sorted(TodoReorderer.BY_RANK)
+                        .collect(Collectors.toList());    // 转变成按 rank 排序的 List<Todo>
+                Tracer.span("decode todos", null, start);
+                result.complete(todos);
+            } else {
+                result.fail(ar.cause());
+            }
+        }));
         return result;
     }
 
     @Override
-    public Future<Boolean> insert(Todo todo) {
+    public Future<Boolean> insert(String listId, Todo todo) {
         Future<Boolean> result = Future.future();
-        final String encoded = Json.encodePrettily(todo);
-        redis.hset(Constants.REDIS_TODO_KEY, String.valueOf(todo.getId()), encoded, ar -> {
+        final String encoded = encode(todo);
+        final String key = Constants.redisTodoKey(listId);
+        redis.hset(key, String.valueOf(todo.getId()), encoded, Tracer.traced("redis HSET", key, ar -> {
             if (ar.succeeded()) result.complete(true);
             else result.fail(ar.cause());
-        });
+        }));
         return result;
     }
 
     // 好好理解此 update 实现
     // 顺序组合 Future:compose(mapper)：当前 Future 完成时，执行相关代码，并返回 Future。当返回的 Future 完成时，组合完成。
     @Override
-    public Future<Todo> update(String todoId, Todo newTodo) {
-        LOGGER.info("update");
+    public Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion) {
+        return update(listId, todoId, newTodo, expectedVersion, UPDATE_MAX_ATTEMPTS);
+    }
+
+    private Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion, int attempts) {
         // 更新待办事项的逻辑，我们会发现它其实是由两个独立的操作组成 - get 和 insert（对于Redis来说）
-        // get 查找指定 id 的待办事项，如果存在则使用 insert 方法插入新待办事项；如果id对应的待办事项不存在则返回404
-        return this.getCertain(todoId).compose(old -> { // getCertain(todoId)返回的是 Future<Optional<Todo>> 而 old 代表着返回结果中的 Optional<Todo>
-            if (old.isPresent()) {                     // 1. 查找待办事项存在
-                Todo fnTodo = old.get().merge(newTodo);
-                return this.insert(fnTodo)                // 1.1 insert(fnTodo)返回结果 Future<Boolean>
-                        .map(r -> r ? fnTodo : null);     // 1.2 如果插入的结果成功将 Future<Boolean> 转化成 Future<Todo>
-            } else {                                  // 2. 查找待办事项不存在
+        // get 查找指定 id 的待办事项，如果存在则合并后写回；如果id对应的待办事项不存在则返回404
+        // 两步之间可能有其他请求写入，因此写回时通过 Lua 脚本比较版本号，版本号变化说明读到的数据已过期
+        return this.getCertain(listId, todoId).compose(old -> { // getCertain(todoId)返回的是 Future<Optional<Todo>> 而 old 代表着返回结果中的 Optional<Todo>
+            if (!old.isPresent()) {                   // 1. 查找待办事项不存在
                 return Future.succeededFuture();
             }
+            final int version = old.get().getVersion();
+            if (expectedVersion != null && expectedVersion != version) {    // 2. 客户端基于旧版本修改
+                return Future.failedFuture(new VersionConflictException(todoId));
+            }
+            Todo fnTodo = old.get().merge(newTodo);   // 3. 查找待办事项存在，合并后以 version + 1 写回
+            fnTodo.setVersion(version + 1);
+            return compareAndSet(CAS_UPDATE, listId, todoId, version, encode(fnTodo)).compose(r -> {
+                if (r == CAS_OK) return Future.succeededFuture(fnTodo);
+                if (r == CAS_MISSING) return Future.succeededFuture();      // 期间被删除
+                if (expectedVersion != null || attempts <= 1) {
+                    return Future.failedFuture(new VersionConflictException(todoId));
+                }
+                return update(listId, todoId, newTodo, null, attempts - 1);  // 未限定版本：重新读取、合并后重试
+            });
         });
     }
 
     @Override
-    public Future<Boolean> delete(String todoId) {
+    public Future<Boolean> delete(String listId, String todoId, Integer expectedVersion) {
         Future<Boolean> result = Future.future();
-        redis.hdel(Constants.REDIS_TODO_KEY, todoId, ar -> {
+        if (expectedVersion != null) {
+            // 限定版本的删除：版本不一致或待办事项已不存在都视为冲突
+            return compareAndSet(CAS_DELETE, listId, todoId, expectedVersion).compose(r -> r == CAS_OK
+                    ? Future.succeededFuture(true)
+                    : Future.failedFuture(new VersionConflictException(todoId)));
+        }
+        final String key = Constants.redisTodoKey(listId);
+        redis.hdel(key, todoId, Tracer.traced("redis HDEL", key, ar -> {
             if (ar.succeeded()) result.complete(true);
             else result.complete(false);
-        });
+        }));
+        return result;
+    }
+
+    // evalScript 优先以 EVALSHA 执行，脚本未缓存时自动回退为 EVAL
+    private Future<Long> compareAndSet(Script script, String listId, String todoId, int version, String... value) {
+        Future<Long> result = Future.future();
+        List<String> args = new ArrayList<>(Arrays.asList(todoId, String.valueOf(version)));
+        args.addAll(Arrays.asList(value));
+        final String key = Constants.redisTodoKey(listId);
+        redis.evalScript(script, Collections.singletonList(key), args, Tracer.traced("redis EVALSHA", key, ar -> {
+            if (ar.succeeded()) result.complete(ar.result().getLong(0));
+            else result.fail(ar.cause());
+        }));
         return result;
     }
 
     @Override
-    public Future<Boolean> deleteAll() {
+    public Future<Boolean> deleteAll(String listId) {
         Future<Boolean> result = Future.future();
-        redis.del(Constants.REDIS_TODO_KEY, ar -> {
+        final String key = Constants.redisTodoKey(listId);
+        redis.del(key, Tracer.traced("redis DEL", key, ar -> {
             if (ar.succeeded()) result.complete(true);
             else result.complete(false);
-        });
+        }));
+        return result;
+    }
+
+    @Override
+    public Future<List<Integer>> deleteWhere(String listId, boolean completed) {
+        Future<Integer> result = Future.future();
+        List<Integer> deleted = new ArrayList<>();
+        bulkFrom(BULK_DELETE, Constants.redisTodoKey(listId), "0", 0, result, deleted, String.valueOf(completed));
+        return result.map(n -> deleted);
+    }
+
+    @Override
+    public Future<Integer> setCompletedWhere(String listId, Boolean completed, boolean value) {
+        Future<Integer> result = Future.future();
+        bulkFrom(BULK_SET_COMPLETED, Constants.redisTodoKey(listId), "0", 0, result, null,
+                completed == null ? "" : String.valueOf(completed), String.valueOf(value));
+        return result;
+    }
+
+    // 逐批执行批量脚本，游标回到 "0" 时结束，累计受影响的条数；ids 不为 null 时收集脚本返回的 id（hash 的 field 即 id）
+    private void bulkFrom(Script script, String key, String cursor, int affected, Future<Integer> result,
+                          List<Integer> ids, String... args) {
+        List<String> argv = new ArrayList<>(Arrays.asList(cursor, String.valueOf(BULK_BATCH_SIZE)));
+        argv.addAll(Arrays.asList(args));
+        redis.evalScript(script, Collections.singletonList(key), argv, Tracer.traced("redis EVALSHA", key, ar -> {
+            if (ar.failed()) {
+                result.fail(ar.cause());
+                return;
+            }
+            final String next = ar.result().getString(0);
+            final int total = affected + ar.result().getLong(1).intValue();
+            if (ids != null) {
+                for (Object id : ar.result().getJsonArray(2)) ids.add(Integer.valueOf(id.toString()));
+            }
+            if ("0".equals(next)) result.complete(total);
+            else bulkFrom(script, key, next, total, result, ids, args);
+        }));
+    }
+
+    // 用 HSCAN 游标分批读取 hash，游标回到 "0" 时遍历结束
+    // HSCAN 在 rehash 期间可能重复返回同一元素，导入时按 id 覆盖写入，因此不影响导出/迁移的结果
+    @Override
+    public Future<Void> scan(String listId, int batchSize, Function<List<Todo>, Future<Void>> batchHandler) {
+        Future<Void> result = Future.future();
+        scanFrom(Constants.redisTodoKey(listId), "0", new ScanOptions().setCount(batchSize), batchHandler, result);
+        return result;
+    }
+
+    private void scanFrom(String key, String cursor, ScanOptions options,
+                          Function<List<Todo>, Future<Void>> batchHandler, Future<Void> result) {
+        redis.hscan(key, cursor, options, Tracer.traced("redis HSCAN", key, ar -> {
+            if (ar.failed()) {
+                result.fail(ar.cause());
+                return;
+            }
+            // ar.result 为 [nextCursor, [field1, value1, field2, value2, ...]]
+            final String next = ar.result().getString(0);
+            final JsonArray entries = ar.result().getJsonArray(1);
+            List<Todo> batch = new ArrayList<>(entries.size() / 2);
+            for (int i = 1; i < entries.size(); i += 2) {
+                batch.add(new Todo(entries.getString(i)));
+            }
+            Future<Void> handled = batch.isEmpty() ? Future.succeededFuture() : batchHandler.apply(batch);
+            handled.setHandler(h -> {
+                if (h.failed()) result.fail(h.cause());
+                else if ("0".equals(next)) result.complete();
+                else scanFrom(key, next, options, batchHandler, result);   // 上一批处理完成后才读取下一批
+            });
+        }));
+    }
+
+    // 一批待办事项合并成一条 HMSET 命令写入
+    @Override
+    public Future<Integer> insertBatch(String listId, List<Todo> todos) {
+        if (todos.isEmpty()) return Future.succeededFuture(0);
+        Future<Integer> result = Future.future();
+        JsonObject fields = new JsonObject();
+        for (Todo todo : todos) {
+            fields.put(String.valueOf(todo.getId()), encode(todo));
+        }
+        final String key = Constants.redisTodoKey(listId);
+        redis.hmset(key, fields, Tracer.traced("redis HMSET", key, ar -> {
+            if (ar.succeeded()) result.complete(todos.size());
+            else result.fail(ar.cause());
+        }));
         return result;
     }
 }
@@ -5,9 +5,11 @@ import io.vertx.core.Future;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 public interface TodoService {
 
+    int UPDATE_MAX_ATTEMPTS = 5;    // 不限定版本的 update 发生并发冲突时，最多尝试的次数
 
     /**
      * 1.待办事项业务逻辑与控制器混杂在一起，让这个类非常的庞大，并且这也不利于我们服务的扩展。根据面向对象解耦的思想，我们需要将控制器部分与业务逻辑部分分离。
@@ -17,15 +19,58 @@ public interface TodoService {
 
     Future<Boolean> initData(); // 初始化数据（或数据库）
 
-    Future<Optional<Todo>> getCertain(String todoId);
+    /**
+     * 预热：在接收流量之前建立好到存储的全部连接（填满连接池）并预先准备好会用到的语句或脚本，
+     * 避免第一批请求承担建立连接、预编译的开销。initData 完成之后调用
+     */
+    Future<Void> warmUp();
 
-    Future<List<Todo>> getAll();
+    /**
+     * 释放存储占用的资源（连接、线程），Verticle 停止时调用；之后不能再使用该服务
+     */
+    Future<Void> close();
 
-    Future<Boolean> insert(Todo todo);
+    /**
+     * 以下方法都以 listId 为作用域：每个待办清单（租户）的数据相互隔离，
+     * 因此 getAll/deleteAll 的开销只取决于该清单本身的大小，deleteAll 也只会清空该清单。
+     */
 
-    Future<Todo> update(String todoId, Todo newTodo);   // 返回 newTodo
+    Future<Optional<Todo>> getCertain(String listId, String todoId);
+
+    Future<List<Todo>> getAll(String listId);
+
+    Future<Boolean> insert(String listId, Todo todo);
+
+    /**
+     * 更新与删除都是无锁的比较并交换（compare-and-set）：只有存储中的版本号与读取时一致才会写入，写入成功后版本号加一。
+     * expectedVersion 为 null 时不限定版本，并发冲突时由服务内部重新读取、合并后重试；
+     * 不为 null 时只尝试一次，版本不一致则以 VersionConflictException 失败。
+     */
+    Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion);   // 返回 newTodo
 
-    Future<Boolean> delete(String todoId);
+    Future<Boolean> delete(String listId, String todoId, Integer expectedVersion);
 
-    Future<Boolean> deleteAll();
+    Future<Boolean> deleteAll(String listId);
+
+    /**
+     * 按 completed 过滤的批量操作（清除已完成、全部标记为完成），在存储端以集合操作完成，不会把清单读到 JVM 中。
+     * deleteWhere 返回被删除的待办事项的 id（只有 id，用于增量更新搜索索引），setCompletedWhere 返回受影响的条数；
+     * setCompletedWhere 的 completed 为 null 时作用于整个清单，只修改 completed 确实改变的待办事项（已经是目标值的不计入），
+     * 每个被修改的待办事项版本号加一。
+     */
+    Future<List<Integer>> deleteWhere(String listId, boolean completed);
+
+    Future<Integer> setCompletedWhere(String listId, Boolean completed, boolean value);
+
+    /**
+     * 流式遍历清单中的全部待办事项（用于导出/备份/迁移），内存占用与清单大小无关：
+     * 每次从存储中取出至多 batchSize 条交给 batchHandler，只有当 batchHandler 返回的 Future 完成后才会读取下一批（背压）；
+     * batchHandler 返回失败的 Future 时遍历中止，返回的 Future 也以该原因失败。
+     */
+    Future<Void> scan(String listId, int batchSize, Function<List<Todo>, Future<Void>> batchHandler);
+
+    /**
+     * 批量写入一批待办事项（一次往返），id 已存在的待办事项会被覆盖，返回写入的条数
+     */
+    Future<Integer> insertBatch(String listId, List<Todo> todos);
 }
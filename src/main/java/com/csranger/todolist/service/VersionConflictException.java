@@ -0,0 +1,13 @@
+package com.csranger.todolist.service;
+
+/**
+ * 乐观并发控制失败：待办事项的当前版本与期望的版本不一致（已被其他请求修改）
+ */
+public class VersionConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public VersionConflictException(String todoId) {
+        super("Version conflict on todo " + todoId);
+    }
+}
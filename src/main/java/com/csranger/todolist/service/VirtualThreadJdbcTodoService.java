@@ -0,0 +1,533 @@
+package com.csranger.todolist.service;
+
+import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.trace.Trace;
+import com.csranger.todolist.trace.Tracer;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * JDBC 版本服务的另一种实现：不经过 JDBCClient 的 worker 线程池，而是在虚拟线程（Java 21+）中直接执行阻塞的 JDBC 调用，
+ * 再把结果通过 runOnContext 交回调用方的 event loop 完成 Future。
+ * 1. 每个请求一个虚拟线程，阻塞时不占用平台线程，排队只发生在数据库连接池上，而不是有界的 worker 线程池上
+ * 2. 连接池中的每个连接缓存自己的 PreparedStatement，同一条 SQL 只预编译一次
+ * 运行在 Java 21 以下时没有虚拟线程，退化为与连接池同样大小的固定线程池（守护线程，不会阻止 JVM 退出）
+ * 注意：虚拟线程在 synchronized 块中阻塞时会钉住（pin）它的载体线程。MySQL Connector/J 9.0 之前的版本在 synchronized 块中
+ * 读写 socket（如 ClientPreparedStatement.executeQuery），同时执行的 SQL 数因此不超过载体线程数（CPU 核数），可能还不如
+ * JDBCClient 的 worker 线程池。本项目依赖的 Connector/J 9.x 已改用 java.util.concurrent 的锁；使用其他驱动时先确认这一点，
+ * 否则应使用默认推荐的 jdbc。检测到旧版 Connector/J 时会打印警告
+ * 不再使用时需要调用 close 关闭线程池与连接
+ */
+public class VirtualThreadJdbcTodoService implements TodoService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadJdbcTodoService.class);
+
+    private static final long CLOSE_TIMEOUT = 5;    // 关闭时等待进行中的操作完成的时间（秒）
+
+    // 请求路径上使用的语句，预热时为每个连接预编译
+    private static final List<String> WARM_UP_STATEMENTS = Arrays.asList(JdbcTodoService.SQL_QUERY,
+            JdbcTodoService.SQL_QUERY_ALL, JdbcTodoService.SQL_INSERT, JdbcTodoService.SQL_UPDATE,
+            JdbcTodoService.SQL_DELETE);
+
+    private final Vertx vertx;
+    private final JsonObject config;
+    private final ExecutorService executor;
+    private final BlockingQueue<PooledConnection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicBoolean driverChecked = new AtomicBoolean();
+    private final int maxPoolSize;
+    private final boolean virtualThreads;
+
+    public VirtualThreadJdbcTodoService(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.config = config;
+        this.maxPoolSize = config.getInteger("max_pool_size", 15);
+        this.idle = new ArrayBlockingQueue<>(maxPoolSize);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newFallbackExecutor(maxPoolSize);
+        String driverClass = config.getString("driver_class");
+        if (driverClass != null) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("JDBC driver not found: " + driverClass, e);
+            }
+        }
+    }
+
+    // 项目以 Java 8 为编译目标，因此通过反射获取 Executors.newVirtualThreadPerTaskExecutor()；不可用时返回 null
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newFallbackExecutor(int threads) {
+        LOGGER.warn("Virtual threads are not available (requires Java 21+), falling back to "
+                + threads + " platform threads");
+        AtomicInteger created = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "jdbc-vt-fallback-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 第一次建立连接时检查驱动：Connector/J 9.0 之前的版本会让虚拟线程钉住载体线程
+    private void checkDriver(Connection connection) {
+        if (!virtualThreads || !driverChecked.compareAndSet(false, true)) return;
+        try {
+            DatabaseMetaData meta = connection.getMetaData();
+            if (meta.getDriverName().startsWith("MySQL Connector") && meta.getDriverMajorVersion() < 9) {
+                LOGGER.warn(meta.getDriverName() + " " + meta.getDriverVersion() + " does socket I/O inside synchronized blocks, "
+                        + "which pins virtual threads: concurrent SQL is limited to the number of carrier threads. "
+                        + "Upgrade to Connector/J 9.0+ or use service.type=jdbc");
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to read JDBC driver metadata", e);
+        }
+    }
+
+    // 不再接受新的操作，等进行中的操作归还连接后关闭全部连接（在 worker 线程中等待，不阻塞 event loop）
+    @Override
+    public Future<Void> close() {
+        Future<Void> result = Future.future();
+        vertx.executeBlocking(f -> {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) executor.shutdownNow();
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            PooledConnection connection;
+            while ((connection = idle.poll()) != null) discard(connection);
+            f.complete();
+        }, result);
+        return result;
+    }
+
+    /**
+     * 在虚拟线程中借用一个连接执行阻塞的 JDBC 操作，结果回到调用方的 Vert.x Context 上完成
+     * 调用方的 trace 随任务一起传递：在虚拟线程中记录借用连接与每条 SQL 语句的 span，完成 Future 时恢复为当前 trace
+     */
+    private <T> Future<T> execute(SqlWork<T> work) {
+        Future<T> result = Future.future();
+        final Context context = vertx.getOrCreateContext();
+        final Trace trace = Tracer.current();
+        try {
+            executor.execute(() -> {
+                try {
+                    T value = withConnection(work, trace);
+                    context.runOnContext(v -> Tracer.resume(trace, () -> result.complete(value)));
+                } catch (Exception e) {
+                    context.runOnContext(v -> Tracer.resume(trace, () -> result.fail(e)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.fail(e);
+        }
+        return result;
+    }
+
+    // 在一个虚拟线程中借出全部 maxPoolSize 个连接（不足时新建），为每个连接预编译常用语句后再一起归还
+    @Override
+    public Future<Void> warmUp() {
+        Future<Void> result = Future.future();
+        final Context context = vertx.getOrCreateContext();
+        try {
+            executor.execute(() -> {
+                List<PooledConnection> connections = new ArrayList<>();
+                try {
+                    while (connections.size() < maxPoolSize) {
+                        PooledConnection connection = acquire();
+                        connections.add(connection);
+                        for (String sql : WARM_UP_STATEMENTS) connection.prepare(sql);
+                    }
+                    context.runOnContext(v -> result.complete());
+                } catch (Exception e) {
+                    context.runOnContext(v -> result.fail(e));
+                } finally {
+                    idle.addAll(connections);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.fail(e);
+        }
+        return result;
+    }
+
+    private <T> T withConnection(SqlWork<T> work, Trace trace) throws Exception {
+        final long start = System.nanoTime();
+        PooledConnection connection = acquire();
+        if (trace != null) trace.span("pool checkout", null, start, System.nanoTime());
+        connection.trace = trace;
+        boolean broken = true;
+        try {
+            T value = work.run(connection);
+            broken = false;
+            return value;
+        } finally {
+            connection.endSpan();
+            if (broken && !isValid(connection)) discard(connection);   // SQL 执行失败且连接已不可用时丢弃，否则照常归还
+            else idle.offer(connection);
+        }
+    }
+
+    // 优先复用空闲连接，连接数未达上限时新建，否则阻塞等待（在虚拟线程中阻塞的开销很小）
+    private PooledConnection acquire() throws SQLException, InterruptedException {
+        PooledConnection connection = idle.poll();
+        if (connection != null) return connection;
+        if (opened.incrementAndGet() <= maxPoolSize) {
+            try {
+                String user = config.getString("user");
+                Connection raw = user == null ? DriverManager.getConnection(config.getString("url"))
+                        : DriverManager.getConnection(config.getString("url"), user, config.getString("password"));
+                checkDriver(raw);
+                return new PooledConnection(raw);
+            } catch (SQLException e) {
+                opened.decrementAndGet();
+                throw e;
+            }
+        }
+        opened.decrementAndGet();
+        return idle.take();
+    }
+
+    private boolean isValid(PooledConnection connection) {
+        try {
+            return connection.connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection connection) {
+        opened.decrementAndGet();
+        try {
+            connection.connection.close();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to close a JDBC connection", e);
+        }
+    }
+
+    @Override
+    public Future<Boolean> initData() {
+        return execute(connection -> {
+            try (Statement statement = connection.connection.createStatement()) {
+                statement.execute(JdbcTodoService.SQL_CREATE);
+                try {
+                    statement.execute(JdbcTodoService.SQL_ADD_LIST_ID);
+                } catch (SQLException ignored) {
+                    // list_id 列已存在
+                }
+                try {
+                    statement.execute(JdbcTodoService.SQL_LIST_PRIMARY_KEY);
+                } catch (SQLException ignored) {
+                    // 主键已经是 (list_id, id)
+                }
+                try {
+                    statement.execute(JdbcTodoService.SQL_ADD_VERSION);
+                } catch (SQLException ignored) {
+                    // version 列已存在
+                }
+                try {
+                    statement.execute(JdbcTodoService.SQL_ADD_RANK);
+                } catch (SQLException ignored) {
+                    // rank 列已存在
+                }
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public Future<Optional<Todo>> getCertain(String listId, String todoId) {
+        return execute(connection -> Optional.ofNullable(queryOne(connection, listId, todoId)));
+    }
+
+    private Todo queryOne(PooledConnection connection, String listId, String todoId) throws SQLException {
+        PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_QUERY);
+        statement.setString(1, listId);
+        statement.setString(2, todoId);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? toTodo(rs) : null;
+        }
+    }
+
+    @Override
+    public Future<List<Todo>> getAll(String listId) {
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_QUERY_ALL);
+            statement.setString(1, listId);
+            List<Todo> todos = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) todos.add(toTodo(rs));
+            }
+            return todos;
+        });
+    }
+
+    @Override
+    public Future<Boolean> insert(String listId, Todo todo) {
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_INSERT);
+            bindInsert(statement, listId, todo);
+            statement.executeUpdate();
+            return true;
+        });
+    }
+
+    // 读取、合并与带版本号的 UPDATE 在同一个虚拟线程中完成，冲突时直接在线程内重试
+    @Override
+    public Future<Todo> update(String listId, String todoId, Todo newTodo, Integer expectedVersion) {
+        return execute(connection -> {
+            for (int attempt = 1; ; attempt++) {
+                Todo old = queryOne(connection, listId, todoId);
+                if (old == null) return null;
+                final int version = old.getVersion();
+                if (expectedVersion != null && expectedVersion != version) throw new VersionConflictException(todoId);
+                Todo fnTodo = old.merge(newTodo);
+                fnTodo.setVersion(version + 1);
+                PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_UPDATE);
+                statement.setString(1, todoId);
+                statement.setString(2, fnTodo.getTitle());
+                statement.setObject(3, fnTodo.isCompleted());
+                statement.setObject(4, fnTodo.getOrder());
+                statement.setString(5, fnTodo.getUrl());
+                statement.setString(6, fnTodo.getRank());
+                statement.setInt(7, fnTodo.getVersion());
+                statement.setString(8, listId);
+                statement.setString(9, todoId);
+                statement.setInt(10, version);
+                if (statement.executeUpdate() > 0) return fnTodo;
+                if (expectedVersion != null || attempt >= UPDATE_MAX_ATTEMPTS) throw new VersionConflictException(todoId);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> delete(String listId, String todoId, Integer expectedVersion) {
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(expectedVersion == null
+                    ? JdbcTodoService.SQL_DELETE : JdbcTodoService.SQL_DELETE_VERSION);
+            statement.setString(1, listId);
+            statement.setString(2, todoId);
+            if (expectedVersion == null) {
+                statement.executeUpdate();
+                return true;
+            }
+            statement.setInt(3, expectedVersion);
+            // 版本不一致或待办事项已不存在时删除 0 行，都视为冲突
+            if (statement.executeUpdate() == 0) throw new VersionConflictException(todoId);
+            return true;
+        });
+    }
+
+    @Override
+    public Future<Boolean> deleteAll(String listId) {
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_DELETE_ALL);
+            statement.setString(1, listId);
+            statement.executeUpdate();
+            return true;
+        });
+    }
+
+    // 与 JdbcTodoService 相同：在一个事务中锁定并读出符合条件的 id，再用一条带同样条件的 DELETE 删除
+    @Override
+    public Future<List<Integer>> deleteWhere(String listId, boolean completed) {
+        return execute(connection -> {
+            connection.connection.setAutoCommit(false);
+            try {
+                PreparedStatement query = connection.prepare(JdbcTodoService.SQL_QUERY_IDS_WHERE);
+                query.setString(1, listId);
+                query.setBoolean(2, completed);
+                List<Integer> deleted = new ArrayList<>();
+                try (ResultSet rs = query.executeQuery()) {
+                    while (rs.next()) deleted.add(rs.getInt(1));
+                }
+                if (!deleted.isEmpty()) {
+                    PreparedStatement delete = connection.prepare(JdbcTodoService.SQL_DELETE_WHERE);
+                    delete.setString(1, listId);
+                    delete.setBoolean(2, completed);
+                    delete.executeUpdate();
+                }
+                connection.connection.commit();
+                return deleted;
+            } catch (Exception e) {
+                connection.connection.rollback();
+                throw e;
+            } finally {
+                connection.connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    @Override
+    public Future<Integer> setCompletedWhere(String listId, Boolean completed, boolean value) {
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(completed == null
+                    ? JdbcTodoService.SQL_SET_COMPLETED : JdbcTodoService.SQL_SET_COMPLETED_WHERE);
+            statement.setBoolean(1, value);
+            statement.setString(2, listId);
+            statement.setBoolean(3, value);
+            if (completed != null) statement.setBoolean(4, completed);
+            return statement.executeUpdate();
+        });
+    }
+
+    // 虚拟线程逐行读取游标，每攒够一批就交给 event loop 上的 batchHandler，并阻塞等待它完成（背压）
+    @Override
+    public Future<Void> scan(String listId, int batchSize, Function<List<Todo>, Future<Void>> batchHandler) {
+        final Context context = vertx.getOrCreateContext();
+        return execute(connection -> {
+            // 扫描使用独立的 Statement，避免 fetchSize 影响缓存中被其他操作复用的语句
+            connection.startSpan(JdbcTodoService.SQL_QUERY_ALL);
+            try (PreparedStatement statement = connection.connection.prepareStatement(JdbcTodoService.SQL_QUERY_ALL)) {
+                statement.setFetchSize(batchSize);
+                statement.setString(1, listId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    List<Todo> batch = new ArrayList<>(batchSize);
+                    while (rs.next()) {
+                        batch.add(toTodo(rs));
+                        if (batch.size() >= batchSize) {
+                            handOver(context, batch, batchHandler);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                    if (!batch.isEmpty()) handOver(context, batch, batchHandler);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void handOver(Context context, List<Todo> batch, Function<List<Todo>, Future<Void>> batchHandler)
+            throws Exception {
+        CompletableFuture<Void> handled = new CompletableFuture<>();
+        context.runOnContext(v -> batchHandler.apply(batch).setHandler(ar -> {
+            if (ar.succeeded()) handled.complete(null);
+            else handled.completeExceptionally(ar.cause());
+        }));
+        try {
+            handled.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public Future<Integer> insertBatch(String listId, List<Todo> todos) {
+        if (todos.isEmpty()) return Future.succeededFuture(0);
+        return execute(connection -> {
+            PreparedStatement statement = connection.prepare(JdbcTodoService.SQL_UPSERT);
+            try {
+                for (Todo todo : todos) {
+                    bindInsert(statement, listId, todo);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            } finally {
+                statement.clearBatch();     // 语句会被缓存复用，失败时也要清空未执行的批次
+            }
+            return todos.size();
+        });
+    }
+
+    private void bindInsert(PreparedStatement statement, String listId, Todo todo) throws SQLException {
+        statement.setInt(1, todo.getId());
+        statement.setString(2, todo.getTitle());
+        statement.setObject(3, todo.isCompleted());
+        statement.setObject(4, todo.getOrder());
+        statement.setString(5, todo.getUrl());
+        statement.setString(6, listId);
+        statement.setInt(7, todo.getVersion());
+        statement.setString(8, todo.getRank());
+    }
+
+    private Todo toTodo(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        JsonObject json = new JsonObject();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            json.put(meta.getColumnLabel(i), rs.getObject(i));
+        }
+        return new Todo(json);
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run(PooledConnection connection) throws Exception;
+    }
+
+    // 连接池中的连接，同时缓存在该连接上预编译过的语句（连接同一时刻只被一个线程使用，因此无需同步）
+    private static final class PooledConnection {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements = new HashMap<>();
+        Trace trace;                // 借用者的 trace，为 null 时不记录 span
+        private String spanSql;     // 正在执行的语句及其开始时间
+        private long spanStart;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            startSpan(sql);
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        // 每条语句记一个 sql span：从准备这条语句开始，到准备下一条语句或归还连接为止（包括绑定参数、执行与读取结果）
+        void startSpan(String sql) {
+            if (trace == null) return;
+            final long now = System.nanoTime();
+            if (spanSql != null) trace.span("sql", spanSql, spanStart, now);
+            spanSql = sql;
+            spanStart = now;
+        }
+
+        void endSpan() {
+            if (trace != null && spanSql != null) trace.span("sql", spanSql, spanStart, System.nanoTime());
+            trace = null;
+            spanSql = null;
+        }
+    }
+}
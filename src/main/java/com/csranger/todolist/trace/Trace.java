@@ -0,0 +1,143 @@
+package com.csranger.todolist.trace;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个请求的 trace：请求本身（根 span）以及处理过程中记录的子 span（解析正文、JSON 编解码、连接池、每条 Redis 命令或 SQL 语句等）
+ * 子 span 可能在 event loop 之外记录（虚拟线程版本的 JDBC），因此 span 方法是同步的；每个 trace 至多记录 MAX_SPANS 个子 span
+ */
+public final class Trace {
+
+    static final int MAX_SPANS = 128;
+    private static final int INITIAL_SPANS = 8;
+
+    private final long id = ThreadLocalRandom.current().nextLong();
+    private final long startNanos = System.nanoTime();
+    private final long startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final boolean sampled;
+
+    // 子 span 按字段分开保存，按需扩容
+    private String[] names = new String[INITIAL_SPANS];
+    private String[] details = new String[INITIAL_SPANS];
+    private long[] starts = new long[INITIAL_SPANS];
+    private long[] ends = new long[INITIAL_SPANS];
+    private int size;
+    private int dropped;
+
+    // 请求结束时由 TraceCollector 填写
+    private String method;
+    private String route;
+    private int status;
+    private long durationNanos;
+
+    Trace(boolean sampled) {
+        this.sampled = sampled;
+    }
+
+    long startNanos() {
+        return startNanos;
+    }
+
+    boolean sampled() {
+        return sampled;
+    }
+
+    long durationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * 记录一个子 span；detail 为附加信息（如 SQL 语句、Redis key），可以为 null
+     */
+    public synchronized void span(String name, String detail, long startNanos, long endNanos) {
+        if (size == MAX_SPANS) {
+            dropped++;
+            return;
+        }
+        if (size == names.length) {
+            int capacity = Math.min(size * 2, MAX_SPANS);
+            names = Arrays.copyOf(names, capacity);
+            details = Arrays.copyOf(details, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        names[size] = name;
+        details[size] = detail;
+        starts[size] = startNanos;
+        ends[size] = endNanos;
+        size++;
+    }
+
+    synchronized void finish(String method, String route, int status, long endNanos) {
+        this.method = method;
+        this.route = route;
+        this.status = status;
+        this.durationNanos = endNanos - startNanos;
+    }
+
+    /**
+     * /debug/traces 返回的格式：各个子 span 的时间为相对请求开始的偏移
+     */
+    synchronized JsonObject toJson() {
+        JsonArray spans = new JsonArray();
+        for (int i = 0; i < size; i++) {
+            JsonObject span = new JsonObject()
+                    .put("name", names[i])
+                    .put("offset_us", (starts[i] - startNanos) / 1000)
+                    .put("duration_us", (ends[i] - starts[i]) / 1000);
+            if (details[i] != null) span.put("detail", details[i]);
+            spans.add(span);
+        }
+        return new JsonObject()
+                .put("traceId", hex(id))
+                .put("name", method + " " + route)
+                .put("status", status)
+                .put("timestamp", startMicros)
+                .put("duration_us", durationNanos / 1000)
+                .put("sampled", sampled)
+                .put("droppedSpans", dropped)
+                .put("spans", spans);
+    }
+
+    /**
+     * Zipkin v2 JSON 格式（一个 trace 的全部 span 组成的数组），可以直接 POST 到 Zipkin 的 /api/v2/spans
+     */
+    synchronized JsonArray toZipkin(String serviceName) {
+        final String traceId = hex(id);
+        final JsonObject endpoint = new JsonObject().put("serviceName", serviceName);
+        JsonArray spans = new JsonArray().add(new JsonObject()
+                .put("traceId", traceId)
+                .put("id", traceId)
+                .put("name", method + " " + route)
+                .put("kind", "SERVER")
+                .put("timestamp", startMicros)
+                .put("duration", Math.max(1, durationNanos / 1000))
+                .put("localEndpoint", endpoint)
+                .put("tags", new JsonObject()
+                        .put("http.method", method)
+                        .put("http.path", route)
+                        .put("http.status_code", String.valueOf(status))));
+        for (int i = 0; i < size; i++) {
+            JsonObject span = new JsonObject()
+                    .put("traceId", traceId)
+                    .put("id", hex(id ^ (0x9E3779B97F4A7C15L * (i + 1))))
+                    .put("parentId", traceId)
+                    .put("name", names[i])
+                    .put("timestamp", startMicros + (starts[i] - startNanos) / 1000)
+                    .put("duration", Math.max(1, (ends[i] - starts[i]) / 1000))
+                    .put("localEndpoint", endpoint);
+            if (details[i] != null) span.put("tags", new JsonObject().put("detail", details[i]));
+            spans.add(span);
+        }
+        return spans;
+    }
+
+    private static String hex(long value) {
+        return String.format("%016x", value);
+    }
+}
@@ -0,0 +1,186 @@
+package com.csranger.todolist.trace;
+
+import com.csranger.todolist.log.LogFiles;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求追踪：每个请求创建一个 Trace 并在处理过程中记录子 span，请求结束时决定是否保留：
+ * 1. 按 trace.sample-rate（0~1）的比例随机采样
+ * 2. 耗时超过 trace.slow-ms 的请求总是保留，便于排查 p99 抖动
+ * 保留的 trace 放进内存中的环形缓冲区（trace.buffer-size 条，旧的被覆盖），配置 trace.debug-endpoint 为 true 时
+ * 可以通过 GET /debug/traces 查询（trace 中含有 SQL 语句、Redis key 等内部信息，只对本机的请求开放）；
+ * 配置了 trace.file 时还会以 Zipkin v2 JSON 格式（每行一个 trace 的 span 数组）追加写入该文件，
+ * 与访问日志一样在超过 trace.file.max-bytes 时轮转为 file.1 ... file.(trace.file.max-files - 1)
+ */
+public class TraceCollector implements Handler<RoutingContext> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TraceCollector.class);
+
+    private static final String TRACE = "trace";
+    private static final String SERVICE_NAME = "todolist";
+    private static final int QUERY_DEFAULT_LIMIT = 20;
+    private static final Object EXPORT_LOCK = new Object();     // 多个 Verticle 实例可能写入（轮转）同一个文件
+
+    private final Vertx vertx;
+    private final double sampleRate;
+    private final long slowNanos;
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final Trace[] ring;
+    private int next;       // 下一个写入位置，ring 由 this 保护
+    private int count;
+
+    public TraceCollector(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.sampleRate = config.getDouble("trace.sample-rate", 0.0);
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(config.getLong("trace.slow-ms", 500L));
+        String file = config.getString("trace.file");
+        this.file = file == null ? null : new File(file);
+        this.maxBytes = config.getLong("trace.file.max-bytes", 64L * 1024 * 1024);
+        this.maxFiles = Math.max(config.getInteger("trace.file.max-files", 5), 1);
+        final int bufferSize = config.getInteger("trace.buffer-size", 256);
+        if (bufferSize < 1) throw new IllegalArgumentException("Invalid trace.buffer-size: " + bufferSize);
+        this.ring = new Trace[bufferSize];
+    }
+
+    /**
+     * 只要配置了采样率或慢请求阈值就开启追踪
+     */
+    public static boolean enabled(JsonObject config) {
+        return config.containsKey("trace.sample-rate") || config.containsKey("trace.slow-ms");
+    }
+
+    /**
+     * 是否注册 /debug/traces，默认不注册
+     */
+    public static boolean debugEndpoint(JsonObject config) {
+        return config.getBoolean("trace.debug-endpoint", false);
+    }
+
+    /**
+     * 注册在所有路由之前：创建 trace，并在同步分派请求期间将其设为当前 trace
+     */
+    @Override
+    public void handle(RoutingContext context) {
+        final Trace trace = new Trace(sample());
+        context.put(TRACE, trace);
+        context.addBodyEndHandler(v -> finish(context, trace));
+        Tracer.resume(trace, context::next);
+    }
+
+    boolean sample() {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * 注册在 BodyHandler 之后：正文读取完成后 BodyHandler 在新的事件中继续分派，需要重新设置当前 trace
+     */
+    public void resume(RoutingContext context) {
+        final Trace trace = context.get(TRACE);
+        if (trace != null) trace.span("read body", null, trace.startNanos(), System.nanoTime());
+        Tracer.resume(trace, context::next);
+    }
+
+    private void finish(RoutingContext context, Trace trace) {
+        Route route = context.currentRoute();
+        trace.finish(context.request().method().name(), route == null || route.getPath() == null ? "-" : route.getPath(),
+                context.response().getStatusCode(), System.nanoTime());
+        if (record(trace) && file != null) export(trace);
+    }
+
+    // 被采样或者是慢请求时放进环形缓冲区，返回是否保留
+    boolean record(Trace trace) {
+        if (!trace.sampled() && trace.durationNanos() < slowNanos) return false;
+        synchronized (this) {
+            ring[next] = trace;
+            next = (next + 1) % ring.length;
+            count = Math.min(count + 1, ring.length);
+        }
+        return true;
+    }
+
+    // 在 worker 线程中追加写入，同一个 Verticle 的导出按顺序执行
+    private void export(Trace trace) {
+        final byte[] line = (trace.toZipkin(SERVICE_NAME).encode() + "\n").getBytes(StandardCharsets.UTF_8);
+        vertx.executeBlocking(f -> {
+            try {
+                write(line);
+                f.complete();
+            } catch (Exception e) {
+                f.fail(e);
+            }
+        }, true, ar -> {
+            if (ar.failed()) LOGGER.warn("Failed to export trace to " + file, ar.cause());
+        });
+    }
+
+    // 写入之后会超过 maxBytes 时先轮转；只保留 maxFiles 个文件，trace 文件占用的磁盘空间有上限
+    void write(byte[] line) throws IOException {
+        synchronized (EXPORT_LOCK) {
+            final long length = file.length();
+            if (length > 0 && length + line.length > maxBytes) LogFiles.rotate(file, maxFiles);
+            Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * GET /debug/traces?limit=返回条数&minMs=最小耗时：按时间倒序返回保留的 trace，非本机的请求返回 403
+     */
+    public void handleQuery(RoutingContext context) {
+        if (!isLoopback(context.request().remoteAddress().host())) {
+            context.response().setStatusCode(403).end();
+            return;
+        }
+        final int limit;
+        final long minNanos;
+        try {
+            String limitParam = context.request().getParam("limit");
+            String minParam = context.request().getParam("minMs");
+            limit = limitParam == null ? QUERY_DEFAULT_LIMIT : Integer.parseInt(limitParam);
+            minNanos = minParam == null ? 0 : TimeUnit.MILLISECONDS.toNanos(Long.parseLong(minParam));
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).end();
+            return;
+        }
+        context.response()
+                .putHeader("content-type", "application/json")
+                .end(query(limit, minNanos).encodePrettily());
+    }
+
+    // 按时间倒序返回至多 limit 条耗时不少于 minNanos 的 trace
+    synchronized JsonArray query(int limit, long minNanos) {
+        JsonArray traces = new JsonArray();
+        for (int i = 1; i <= count && traces.size() < limit; i++) {
+            Trace trace = ring[(next - i + ring.length) % ring.length];
+            if (trace.durationNanos() >= minNanos) traces.add(trace.toJson());
+        }
+        return traces;
+    }
+
+    // remoteAddress 是 IP 字面量，解析时不会查询 DNS
+    static boolean isLoopback(String host) {
+        try {
+            return host != null && InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.csranger.todolist.trace;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+
+/**
+ * 在代码中记录 span 的入口。当前请求的 trace 保存在线程局部变量中：
+ * 1. TraceCollector 在同步分派请求时设置当前 trace，处理器中同步发起的存储操作可以直接取到
+ * 2. 存储操作的回调用 traced 包装：回调执行时记录 span，并在回调期间恢复发起时的 trace，
+ * 因此 Future 的 compose 链中后续发起的命令（例如 update 的读取之后的写入）也会记在同一个 trace 上
+ * 没有开启追踪或当前没有 trace 时，这些方法几乎没有开销
+ */
+public final class Tracer {
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private Tracer() {
+    }
+
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在当前 trace 上记录一个从 startNanos 到现在的 span
+     */
+    public static void span(String name, String detail, long startNanos) {
+        Trace trace = CURRENT.get();
+        if (trace != null) trace.span(name, detail, startNanos, System.nanoTime());
+    }
+
+    public static <T> Handler<AsyncResult<T>> traced(String name, Handler<AsyncResult<T>> handler) {
+        return traced(name, null, handler);
+    }
+
+    /**
+     * 包装异步操作的回调：从现在（发起操作）到回调执行记为一个 span，回调在发起时的 trace 中执行
+     */
+    public static <T> Handler<AsyncResult<T>> traced(String name, String detail, Handler<AsyncResult<T>> handler) {
+        final Trace trace = CURRENT.get();
+        if (trace == null) return handler;
+        final long start = System.nanoTime();
+        return ar -> {
+            trace.span(name, detail, start, System.nanoTime());
+            Trace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                handler.handle(ar);
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * 以 trace 为当前 trace 执行 action（用于在其他线程或之后的事件中继续同一个请求）
+     */
+    public static void resume(Trace trace, Runnable action) {
+        if (trace == null) {
+            action.run();
+            return;
+        }
+        Trace previous = CURRENT.get();
+        CURRENT.set(trace);
+        try {
+            action.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+}
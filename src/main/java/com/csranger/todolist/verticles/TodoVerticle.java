@@ -2,27 +2,47 @@ package com.csranger.todolist.verticles;
 
 import com.csranger.todolist.Constants;
 import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.limit.RateLimiter;
+import com.csranger.todolist.log.AccessLog;
+import com.csranger.todolist.order.TodoReorderer;
+import com.csranger.todolist.search.TodoSearchIndex;
+import com.csranger.todolist.service.IndexedTodoService;
 import com.csranger.todolist.service.JdbcTodoService;
 import com.csranger.todolist.service.RedisTodoService;
 import com.csranger.todolist.service.TodoService;
+import com.csranger.todolist.service.VersionConflictException;
+import com.csranger.todolist.service.VirtualThreadJdbcTodoService;
+import com.csranger.todolist.trace.TraceCollector;
+import com.csranger.todolist.trace.Tracer;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.parsetools.RecordParser;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
 import io.vertx.redis.RedisOptions;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 public class TodoVerticle extends AbstractVerticle {
@@ -32,15 +52,34 @@ public class TodoVerticle extends AbstractVerticle {
     private static final String HOST = "0.0.0.0";
     private static final int PORT = 8082;
 
+    private static final int TRANSFER_BATCH_SIZE = 500;           // 导出/导入时每批读写的待办事项数量
+    private static final int TRANSFER_MAX_LINE_SIZE = 64 * 1024;  // 导入时单行 JSON 的最大字节数
+    private static final int SEARCH_DEFAULT_LIMIT = 10;
+    private static final int SEARCH_MAX_LIMIT = 100;
+    private static final int SEARCH_MAX_LISTS = 1000;              // 默认至多保留索引的清单数
+    private static final String LIST_ROUTE = "/lists/([^/]+)/.*";   // param0 为清单 id
+    private static final String WARMUP_TOKEN_HEADER = "X-Warm-Up-Token";
+
     private TodoService service;
+    private TodoSearchIndex searchIndex;
+    private TodoReorderer reorderer;
+    private TraceCollector traces;  // 未配置 trace.sample-rate / trace.slow-ms 时为 null，不追踪
+    private AccessLog accessLog;    // 未配置 access.log.file 时为 null，不记录访问日志
+    private boolean ready;          // 存储已初始化（warm 模式下还包括预热）完成，/health/ready 返回 200
+    private final String warmUpToken = UUID.randomUUID().toString();    // 预热请求携带的令牌，外部无法伪造
 
     // 初始化存储结构
-    private void initData() {
+    private Future<Void> initData() {
         final String serviceType = config().getString("service.type", "redis");
         LOGGER.info("Service Type: " + serviceType);
+        TodoService storage;
         switch (serviceType) {
             case "jdbc":
-                service = new JdbcTodoService(vertx, config());
+                storage = new JdbcTodoService(vertx, config());
+                break;
+            case "jdbc-vt":     // 在虚拟线程中直接执行阻塞 JDBC 调用，配置项与 jdbc 相同
+                                // 需要 Java 21+ 且驱动不会钉住载体线程（见 VirtualThreadJdbcTodoService），否则推荐使用 jdbc
+                storage = new VirtualThreadJdbcTodoService(vertx, config());
                 break;
             case "redis":
             default:
@@ -48,13 +87,21 @@ public class TodoVerticle extends AbstractVerticle {
                         .setHost(config().getString("redis.host", "127.0.0.1"))
                         .setPort(config().getInteger("redis.port", 6379));
 
-                service = new RedisTodoService(vertx, config);
+                storage = new RedisTodoService(vertx, config);
         }
-        service.initData().setHandler(res -> {
-            if (res.failed()) {
-                LOGGER.error("Persistence service is not running!");
-                res.cause().printStackTrace();
-            }
+        // 写操作经过 IndexedTodoService 时同步更新标题全文索引，内存中至多保留 search.max-lists 个清单的索引
+        searchIndex = new TodoSearchIndex(storage, config().getInteger("search.max-lists", SEARCH_MAX_LISTS));
+        service = new IndexedTodoService(storage, searchIndex);
+        reorderer = new TodoReorderer(vertx, service);
+        // 索引只反映经过本实例的写入，多实例部署时按 search.rebuild-interval（毫秒）定期重新构建
+        final Long rebuildInterval = config().getLong("search.rebuild-interval");
+        if (rebuildInterval != null) vertx.setPeriodic(rebuildInterval, timer -> searchIndex.invalidateAll());
+        return service.initData().compose(res -> {
+            // 启动时流式扫描默认清单构建全文索引，其他清单在第一次搜索时构建
+            searchIndex.ready(Constants.DEFAULT_LIST_ID).setHandler(built -> {
+                if (built.failed()) LOGGER.error("Failed to build the search index", built.cause());
+            });
+            return Future.<Void>succeededFuture();
         });
     }
 
@@ -62,6 +109,17 @@ public class TodoVerticle extends AbstractVerticle {
     public void start(Future<Void> future) throws Exception {
         Router router = Router.router(vertx);
 
+        // 访问日志必须是第一个处理器，才能覆盖所有请求（包括被后面的处理器拒绝的请求）
+        if (config().getString("access.log.file") != null) {
+            accessLog = AccessLog.create(config());
+            router.route().handler(accessLog);
+        }
+        if (TraceCollector.enabled(config())) {
+            traces = new TraceCollector(vertx, config());
+            router.route().handler(traces);
+            if (TraceCollector.debugEndpoint(config())) router.get(Constants.API_DEBUG_TRACES).handler(traces::handleQuery);
+        }
+
         // CORS support:CORS是一个由浏览器共同遵循的一套策略，通过http的header来进行交互。当浏览器识别到发送的请求是跨域请求的时候，
         // 会把Origin的Header加入到http请求一起发送到服务器。服务器会解析Header并判断是否允许跨域请求，如果允许，
         // 响应头中会有Access-Control-Allow-Origin这个属性。如果服务器允许所有跨域请求，将该属性设置为*即可，如果响应头没有改属性，则浏览器会拦截该请求。
@@ -71,41 +129,210 @@ public class TodoVerticle extends AbstractVerticle {
         allowHeaders.add("origin");
         allowHeaders.add("Content-Type");
         allowHeaders.add("accept");
+        allowHeaders.add("If-Match");
+        allowHeaders.add("X-API-Key");
         Set<HttpMethod> allowMethods = new HashSet<>();
         allowMethods.add(HttpMethod.GET);
         allowMethods.add(HttpMethod.POST);
         allowMethods.add(HttpMethod.DELETE);
         allowMethods.add(HttpMethod.PATCH);
+        router.get(Constants.API_HEALTH_LIVE).handler(context -> context.response().end());
+        router.get(Constants.API_HEALTH_READY).handler(context -> context.response().setStatusCode(ready ? 200 : 503).end());
         router.route().handler(CorsHandler.create("*")   // route()方法（无参数）代表此路由匹配所有请求,这两个Set的作用是支持 CORS
                 .allowedHeaders(allowHeaders)
-                .allowedMethods(allowMethods));
+                .allowedMethods(allowMethods)
+                .exposedHeader("ETag")
+                .exposedHeader("Retry-After"));
+        // 限流在读取请求正文和访问存储之前进行，被拒绝的请求不消耗后端资源（健康检查与预热请求不限流）
+        if (config().getJsonObject("rate.limit") != null) {
+            router.route().handler(context -> {
+                if (warmUpToken.equals(context.request().getHeader(WARMUP_TOKEN_HEADER))) RateLimiter.exempt(context);
+                context.next();
+            });
+            RateLimiter.install(vertx, router, config().getJsonObject("rate.limit"));
+        }
+        // 导入需要边读取请求正文边解析，因此必须注册在 BodyHandler 之前，避免整个正文被缓存在内存中
+        // 清单 id 的检查要在所有 /lists/:listId 路由之前（包括导入）
+        router.routeWithRegex(LIST_ROUTE).handler(this::checkListId);
+        router.post(Constants.API_IMPORT).handler(this::handleImport);
+        router.post(Constants.API_LIST_IMPORT).handler(this::handleImport);
         // 给路由器绑定了一个全局的BodyHandler,它的作用是处理HTTP请求正文并获取其中的数据。比如，在实现添加待办事项逻辑的时候，
         // 我们需要读取请求正文中的JSON数据，这时候我们就可以用BodyHandler
         router.route().handler(BodyHandler.create());
+        if (traces != null) router.route().handler(traces::resume);
 
 
         // routes:用对应的方法（如get,post,patch等等）将路由路径与路由器绑定，并且我们调用handler方法给每个路由绑定上对应的Handler
         // 接受的Handler类型为Handler<RoutingContext>。这里我们分别绑定了六个方法引用，这也是我们待办事项服务逻辑的核心。
+        // 导出路由需要注册在 API_GET 之前，否则 _export 会被当成 todoId 匹配
+        router.get(Constants.API_EXPORT).handler(this::handleExport);
+        router.get(Constants.API_LIST_EXPORT).handler(this::handleExport);
+        router.get(Constants.API_SEARCH).handler(this::handleSearch);
+        router.get(Constants.API_LIST_SEARCH).handler(this::handleSearch);
         router.get(Constants.API_GET).handler(this::handleGetTodo);
         router.get(Constants.API_LIST_ALL).handler(this::handleGetAll);
         router.post(Constants.API_CREATE).handler(this::handleCreateTodo);
         router.patch(Constants.API_UPDATE).handler(this::handleUpdateTodo);
+        router.post(Constants.API_MOVE).handler(this::handleMoveTodo);
         router.delete(Constants.API_DELETE).handler(this::handleDeleteOne);
         router.delete(Constants.API_DELETE_ALL).handler(this::handleDeleteAll);
+        router.patch(Constants.API_UPDATE_ALL).handler(this::handleUpdateAll);
+        // 按清单（租户）划分的路由，与上面的六个路由共用同一组 Handler，/todos 相当于访问默认清单
+        router.get(Constants.API_LIST_GET).handler(this::handleGetTodo);
+        router.get(Constants.API_LIST_LIST_ALL).handler(this::handleGetAll);
+        router.post(Constants.API_LIST_CREATE).handler(this::handleCreateTodo);
+        router.patch(Constants.API_LIST_UPDATE).handler(this::handleUpdateTodo);
+        router.post(Constants.API_LIST_MOVE).handler(this::handleMoveTodo);
+        router.delete(Constants.API_LIST_DELETE).handler(this::handleDeleteOne);
+        router.delete(Constants.API_LIST_DELETE_ALL).handler(this::handleDeleteAll);
+        router.patch(Constants.API_LIST_UPDATE_ALL).handler(this::handleUpdateAll);
+
+        if ("warm".equals(config().getString("startup.mode", "lazy"))) {
+            // 预热启动：存储初始化、连接池填满之后才开始监听；监听之后用合成请求预热编解码与各个 Handler（JIT），
+            // 完成后才就绪。任何一步失败都会让部署失败，而不是带着不可用的存储接收流量
+            final int iterations = config().getInteger("startup.warmup.iterations", 0);
+            initData()
+                    .compose(v -> service.warmUp())
+                    .compose(v -> listen(router))
+                    .compose(v -> warmUpHandlers(iterations))
+                    .setHandler(ar -> {
+                        if (ar.succeeded()) {
+                            ready = true;
+                            LOGGER.info("Ready to serve after warm-up");
+                            future.complete();
+                        } else {
+                            LOGGER.error("Warm start failed", ar.cause());
+                            future.fail(ar.cause());
+                        }
+                    });
+            return;
+        }
+
+        // 默认（lazy）：立即监听，在后台初始化存储，初始化完成之前 /health/ready 返回 503
+        listen(router).setHandler(future);
+        // 初始化 RedisClient 并且测试连接
+        initData().setHandler(res -> {
+            if (res.failed()) {
+                LOGGER.error("Persistence service is not running!");
+                res.cause().printStackTrace();
+                return;
+            }
+            ready = true;
+        });
+    }
+
+    @Override
+    public void stop(Future<Void> future) {
+        // 先关闭存储（连接池、线程池），再关闭访问日志
+        Future<Void> closed = service == null ? Future.succeededFuture() : service.close();
+        closed.setHandler(ar -> {
+            if (ar.failed()) LOGGER.warn("Failed to close the persistence service", ar.cause());
+            if (accessLog == null) {
+                future.complete();
+                return;
+            }
+            // 关闭时要等写线程把缓冲区中剩余的日志写完，不能阻塞 event loop
+            vertx.executeBlocking(f -> {
+                accessLog.close();
+                f.complete();
+            }, future);
+        });
+    }
 
-        // 创建一个HTTP服务端
+    // 创建一个HTTP服务端
+    private Future<Void> listen(Router router) {
+        Future<Void> result = Future.future();
         vertx.createHttpServer()
                 .requestHandler(router::accept)
-                .listen(PORT, HOST, result -> {
-                    if (result.succeeded()) future.complete();
-                    else future.fail(result.cause());
+                .listen(PORT, HOST, ar -> {
+                    if (ar.succeeded()) result.complete();
+                    else result.fail(ar.cause());
                 });
+        return result;
+    }
 
+    /**
+     * 合成预热：通过本机回环地址向自己发送 iterations 轮请求（创建、读取、更新、列表、搜索、删除），
+     * 让请求解析、JSON 编解码以及各个 Handler 的代码路径在真实流量到来之前被 JIT 编译；数据写在 WARMUP_LIST_ID 清单中，结束后清空
+     */
+    private Future<Void> warmUpHandlers(int iterations) {
+        if (iterations <= 0) return Future.succeededFuture();
+        final long start = System.currentTimeMillis();
+        final HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultHost("localhost").setDefaultPort(PORT).setKeepAlive(true));
+        Future<Void> result = Future.future();
+        warmUpIteration(client, iterations)
+                .compose(v -> service.deleteAll(Constants.WARMUP_LIST_ID))
+                .setHandler(ar -> {
+                    client.close();
+                    if (ar.succeeded()) {
+                        LOGGER.info("Warmed up with " + iterations + " iterations in " + (System.currentTimeMillis() - start) + " ms");
+                        result.complete();
+                    } else {
+                        result.fail(ar.cause());
+                    }
+                });
+        return result;
+    }
 
-        // 初始化 RedisClient 并且测试连接
-        initData();
+    private Future<Void> warmUpIteration(HttpClient client, int remaining) {
+        if (remaining <= 0) return Future.succeededFuture();
+        final String todos = "/lists/" + Constants.WARMUP_LIST_ID + "/todos";
+        return warmUpRequest(client, HttpMethod.POST, todos, new JsonObject()
+                .put("title", "Warm-up " + remaining).put("order", remaining).encode())
+                .compose(created -> {
+                    final String todo = todos + "/" + new JsonObject(created.toString()).getInteger("id");
+                    return warmUpRequest(client, HttpMethod.GET, todo, null)
+                            .compose(b -> warmUpRequest(client, HttpMethod.PATCH, todo, "{\"completed\":true}"))
+                            .compose(b -> warmUpRequest(client, HttpMethod.GET, todos, null))
+                            .compose(b -> warmUpRequest(client, HttpMethod.GET, todos + "/search?q=warm", null))
+                            .compose(b -> warmUpRequest(client, HttpMethod.DELETE, todo, null));
+                })
+                .compose(b -> warmUpIteration(client, remaining - 1));
     }
 
+    private Future<Buffer> warmUpRequest(HttpClient client, HttpMethod method, String uri, String body) {
+        Future<Buffer> result = Future.future();
+        HttpClientRequest request = client.request(method, uri, response -> response.bodyHandler(buffer -> {
+            if (response.statusCode() < 300) result.tryComplete(buffer);
+            else result.tryFail(new IllegalStateException("Warm-up request " + method + " " + uri
+                    + " failed with status " + response.statusCode()));
+        }));
+        request.exceptionHandler(result::tryFail);
+        request.putHeader(WARMUP_TOKEN_HEADER, warmUpToken);
+        if (body == null) request.end();
+        else request.end(body);
+        return result;
+    }
+
+
+    // 记录存储操作从发起到完成的耗时，计入访问日志的 backend 字段
+    private <T> Future<T> timed(RoutingContext context, Future<T> operation) {
+        if (accessLog == null) return operation;
+        final long start = System.nanoTime();
+        Future<T> result = Future.future();
+        operation.setHandler(ar -> {
+            AccessLog.addBackendTime(context, System.nanoTime() - start);
+            result.handle(ar);
+        });
+        return result;
+    }
+
+    // 解析请求正文（TodoConverter），计入 trace
+    private Todo decodeTodo(RoutingContext context) {
+        final long start = System.nanoTime();
+        Todo todo = new Todo(context.getBodyAsString());
+        Tracer.span("decode todo", null, start);
+        return todo;
+    }
+
+    // 编码响应正文，计入 trace
+    private String encode(Object value) {
+        final long start = System.nanoTime();
+        String encoded = Json.encodePrettily(value);
+        Tracer.span("encode response", null, start);
+        return encoded;
+    }
 
     // 对比1和2来理解consumer
     private <T> Handler<AsyncResult<T>> resultHandler(RoutingContext context, Consumer<T> consumer) {
@@ -119,6 +346,21 @@ public class TodoVerticle extends AbstractVerticle {
         };
     }
 
+    // 清单 id 超过 list_id 列宽时，JDBC 要么拒绝（503）要么截断（不同清单共用数据），因此直接返回 400
+    private void checkListId(RoutingContext context) {
+        if (context.request().getParam("param0").length() > Constants.MAX_LIST_ID_LENGTH) {
+            context.response().setStatusCode(400).end();
+            return;
+        }
+        context.next();
+    }
+
+    // 获取请求所属的清单 id，未指定时为默认清单
+    private String listId(RoutingContext context) {
+        String listId = context.request().getParam("listId");
+        return listId == null ? Constants.DEFAULT_LIST_ID : listId;
+    }
+
     // 1.实现获取待办事项的逻辑
     private void handleGetTodo(RoutingContext context) {
         String todoId = context.request().getParam("todoId");
@@ -126,12 +368,13 @@ public class TodoVerticle extends AbstractVerticle {
             context.response().setStatusCode(400).end();  // 400 客户端请求的语法错误，服务器无法理解
             return;
         }
-        service.getCertain(todoId).setHandler(ar -> {
+        timed(context, service.getCertain(listId(context), todoId)).setHandler(ar -> {
             if (ar.succeeded()) {   // getCertain 操作完成成功
                 Optional<Todo> res = ar.result();
                 if (res.isPresent()) {          // 指定 id 的待办事项不为 null
-                    final String encoded = Json.encodePrettily(res.get());
+                    final String encoded = encode(wrapObject(res.get(), context));
                     context.response().putHeader("content-type", "application/json")
+                            .putHeader("ETag", etag(res.get()))
                             .end(encoded);
                 } else {                        // 指定 id 的待办事项为 null：未找到指定资源： 404
                     context.response().setStatusCode(404).end();
@@ -144,11 +387,11 @@ public class TodoVerticle extends AbstractVerticle {
 
     // 2.获取所有待办事项的逻辑
     private void handleGetAll(RoutingContext context) {
-        service.getAll().setHandler(resultHandler(context, res -> {    // 此res 代表着异步操作的结果所以是 List<Todo> 类型
+        timed(context, service.getAll(listId(context))).setHandler(resultHandler(context, res -> {    // 此res 代表着异步操作的结果所以是 List<Todo> 类型
             if (res == null) {
                 context.response().setStatusCode(503).end();   // 503：Service Unavailable 于超载或系统维护，服务器暂时的无法处理客户端的请求。
             } else {
-                final String encoded = Json.encodePrettily(res);
+                final String encoded = encode(wrapObjects(res, context));
                 context.response()
                         .putHeader("content-type", "application/json")
                         .end(encoded);
@@ -159,13 +402,18 @@ public class TodoVerticle extends AbstractVerticle {
     // 3.创建待办事项的逻辑
     private void handleCreateTodo(RoutingContext context) {
         try {
-            final Todo todo = wrapObject(new Todo(context.getBodyAsString()), context);
-            final String encoded = Json.encodePrettily(todo);
-            service.insert(todo).setHandler(resultHandler(context, res -> {    // 此res 代表着异步操作的结果所以是 Boolean 类型
+            final Todo todo = decodeTodo(context);
+            assignId(todo);
+            todo.setUrl(null);          // url 由请求推导，不需要存储
+            todo.setRank(null);         // 新建的待办事项排在最后，排序键只能通过移动接口修改
+            todo.setVersion(1);
+            final String encoded = encode(wrapObject(new Todo(todo), context));
+            timed(context, service.insert(listId(context), todo)).setHandler(resultHandler(context, res -> {    // 此res 代表着异步操作的结果所以是 Boolean 类型
                 if (res) {
                     context.response()
                             .setStatusCode(201)
                             .putHeader("content-type", "application/json")
+                            .putHeader("ETag", etag(todo))
                             .end(encoded);
                 } else {
                     context.response().setStatusCode(503).end();   // service unavailable
@@ -179,37 +427,53 @@ public class TodoVerticle extends AbstractVerticle {
     // 4.更新待办事项的逻辑
     private void handleUpdateTodo(RoutingContext context) {
         try {
-            LOGGER.info("handleUpdateTodo");
-
             String todoId = context.request().getParam("todoId");
-            final Todo newTodo = new Todo(context.getBodyAsString());
+            final Todo newTodo = decodeTodo(context);
+            newTodo.setRank(null);      // 忽略客户端提供的排序键，只能通过移动接口修改
             // handle error
             if (todoId == null) {
                 context.response().setStatusCode(400).end();    // url
                 return;
             }
 
-            service.update(todoId, newTodo).setHandler(resultHandler(context, res -> {  // 此res 代表着异步操作的结果所以是 Todo 类型
+            final Integer expectedVersion = expectedVersion(context);
+            timed(context, service.update(listId(context), todoId, newTodo, expectedVersion)).setHandler(ar -> {
+                if (ar.failed()) {
+                    conflictOrUnavailable(context, ar.cause(), expectedVersion);
+                    return;
+                }
+                Todo res = ar.result();     // 此res 代表着异步操作的结果所以是 Todo 类型
                 if (res == null) {   // todoId 对应的待办事项在 redis 数据库中不存在
                     context.response().setStatusCode(404).end();  // 404 服务器无法根据客户端的请求找到资源
                 } else {
-                    final String encoded = Json.encodePrettily(res);
+                    final String encoded = encode(wrapObject(res, context));
                     context.response()
                             .putHeader("content-type", "application/json")
+                            .putHeader("ETag", etag(res))
                             .end(encoded);
                 }
-
-            }));
+            });
         } catch (DecodeException e) {
             context.response().setStatusCode(400).end(); //Bad Request	客户端请求的语法错误，服务器无法理解
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(412).end(); // Precondition Failed	If-Match 不是本服务生成的 ETag，不可能与任何版本匹配
         }
     }
 
     // 5.删除待办事项
     private void handleDeleteOne(RoutingContext context) {
         final String todoId = context.request().getParam("todoId");
-        service.delete(todoId).setHandler(ar -> {
-            if (ar.succeeded()) {
+        final Integer expectedVersion;
+        try {
+            expectedVersion = expectedVersion(context);
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(412).end();
+            return;
+        }
+        timed(context, service.delete(listId(context), todoId, expectedVersion)).setHandler(ar -> {
+            if (ar.failed() && ar.cause() instanceof VersionConflictException) {
+                conflictOrUnavailable(context, ar.cause(), expectedVersion);
+            } else if (ar.succeeded()) {
                 Boolean res = ar.result();
                 if (res) context.response().setStatusCode(204).end();    // No Content	无内容。服务器成功处理，但未返回内容。
                 else
@@ -220,19 +484,268 @@ public class TodoVerticle extends AbstractVerticle {
         });
     }
 
-    // 6.删除全部待办事项
+    // 6.删除全部待办事项；带 ?completed=true|false 时只删除符合条件的待办事项（清除已完成），返回删除的条数
     private void handleDeleteAll(RoutingContext context) {
-        service.deleteAll().setHandler(resultHandler(context, res -> {      // 此res 代表着异步操作的结果所以是 Boolean 类型
+        final Boolean completed;
+        try {
+            completed = completedFilter(context);
+        } catch (IllegalArgumentException e) {
+            context.response().setStatusCode(400).end();
+            return;
+        }
+        if (completed != null) {
+            timed(context, service.deleteWhere(listId(context), completed)).setHandler(resultHandler(context, ids -> affected(context, ids.size())));
+            return;
+        }
+        timed(context, service.deleteAll(listId(context))).setHandler(resultHandler(context, res -> {      // 此res 代表着异步操作的结果所以是 Boolean 类型
             if (res) context.response().setStatusCode(204).end();
             else context.response().setStatusCode(503).end();
         }));
     }
 
-    private Todo wrapObject(Todo todo, RoutingContext context) {
+    // 6.1 批量修改完成状态（全部标记为完成/未完成）：请求正文只能包含 completed，可选 ?completed=true|false 过滤，返回修改的条数
+    private void handleUpdateAll(RoutingContext context) {
+        final Boolean completed;
+        final Boolean value;
+        try {
+            completed = completedFilter(context);
+            JsonObject body = context.getBodyAsJson();
+            value = body == null ? null : body.getBoolean("completed");
+            if (value == null || body.size() != 1) throw new IllegalArgumentException("Only completed can be updated in bulk");
+        } catch (DecodeException | ClassCastException | IllegalArgumentException e) {
+            context.response().setStatusCode(400).end();    // Bad Request	客户端请求的语法错误，服务器无法理解
+            return;
+        }
+        timed(context, service.setCompletedWhere(listId(context), completed, value)).setHandler(resultHandler(context, n -> affected(context, n)));
+    }
+
+    // 解析 ?completed= 过滤条件，未指定时为 null
+    private Boolean completedFilter(RoutingContext context) {
+        String completed = context.request().getParam("completed");
+        if (completed == null) return null;
+        if ("true".equals(completed) || "false".equals(completed)) return Boolean.valueOf(completed);
+        throw new IllegalArgumentException("Invalid completed filter: " + completed);
+    }
+
+    private void affected(RoutingContext context, int n) {
+        context.response()
+                .putHeader("content-type", "application/json")
+                .end(new JsonObject().put("affected", n).encodePrettily());
+    }
+
+    // 7.以 NDJSON 格式流式导出清单中的全部待办事项
+    private void handleExport(RoutingContext context) {
+        final HttpServerResponse response = context.response();
+        response.setChunked(true).putHeader("content-type", "application/x-ndjson");
+        // 客户端断开连接后不再等待 drain，尽快中止遍历以释放存储连接
+        final Future<Void> closed = Future.future();
+        response.closeHandler(v -> closed.tryComplete());
+        service.scan(listId(context), TRANSFER_BATCH_SIZE, batch -> {
+            if (closed.isComplete()) return Future.failedFuture("Client closed the connection");
+            Buffer buffer = Buffer.buffer();
+            for (Todo todo : batch) {
+                buffer.appendString(todo.toJson().encode()).appendString("\n");
+            }
+            response.write(buffer);
+            if (!response.writeQueueFull()) return Future.succeededFuture();
+            // 写缓冲区已满：等客户端消费后（drain）再读取下一批，保证内存占用恒定
+            Future<Void> drained = Future.future();
+            response.drainHandler(v -> drained.tryComplete());
+            closed.setHandler(v -> drained.tryFail("Client closed the connection"));
+            return drained;
+        }).setHandler(ar -> {
+            if (closed.isComplete()) return;
+            if (ar.succeeded()) response.end();
+            else if (!response.headWritten()) response.setStatusCode(503).end();
+            else response.close();      // 已经开始输出正文，只能断开连接让客户端感知导出不完整
+        });
+    }
+
+    // 8.流式导入 NDJSON：逐行解析请求正文，每攒够一批就暂停读取、批量写入，写入完成后再继续读取（背压）
+    private void handleImport(RoutingContext context) {
+        final String listId = listId(context);
+        final HttpServerResponse response = context.response();
+        final List<Todo> batch = new ArrayList<>(TRANSFER_BATCH_SIZE);
+        final int[] imported = {0};
+        // 正在写入的批次：请求正文可能在批次写入完成前就已读完，结束时需要等待它完成
+        final List<Future<Void>> pending = new ArrayList<>(1);
+        pending.add(Future.succeededFuture());
+        final RecordParser parser = RecordParser.newDelimited("\n", context.request())
+                .maxRecordSize(TRANSFER_MAX_LINE_SIZE);
+        parser.exceptionHandler(e -> {
+            parser.pause();
+            if (!response.ended()) response.setStatusCode(400).end();
+        });
+        parser.handler(line -> {
+            if (response.ended()) return;
+            final String json = line.toString().trim();
+            if (json.isEmpty()) return;
+            try {
+                Todo todo = new Todo(json);
+                // 导入保留导出时的排序键，但不合法或超过列宽的排序键会破坏清单的顺序
+                if (!TodoReorderer.isValidRank(todo.getRank())) throw new DecodeException("Invalid rank: " + todo.getRank());
+                assignId(todo);
+                batch.add(todo);
+            } catch (DecodeException e) {
+                parser.pause();
+                response.setStatusCode(400).end();    // Bad Request	客户端请求的语法错误，服务器无法理解
+                return;
+            }
+            if (batch.size() >= TRANSFER_BATCH_SIZE) {
+                parser.pause();
+                Future<Void> flushed = flushImport(listId, batch, imported);
+                pending.set(0, flushed);
+                flushed.setHandler(ar -> {
+                    if (ar.succeeded()) parser.resume();
+                    else if (!response.ended()) response.setStatusCode(503).end();
+                });
+            }
+        });
+        // RecordParser 在正文结束时会丢弃最后一行没有换行符的记录：由这里接管请求的 endHandler（需要在 parser.handler 之后设置），
+        // 先补一个换行符把缓冲中剩下的记录解析出来；请求暂停期间不会结束，此时解析器中已经没有完整的记录
+        context.request().endHandler(v -> {
+            if (response.ended()) return;
+            parser.handle(Buffer.buffer("\n"));
+            if (response.ended()) return;
+            pending.get(0).compose(f -> flushImport(listId, batch, imported)).setHandler(ar -> {
+                if (response.ended()) return;       // 写入失败时已经返回过 503
+                if (ar.succeeded()) {
+                    response.putHeader("content-type", "application/json")
+                            .end(new JsonObject().put("imported", imported[0]).encodePrettily());
+                } else {
+                    response.setStatusCode(503).end();
+                }
+            });
+        });
+    }
+
+    // 9.按标题全文搜索待办事项：在内存索引中取得排名前 limit 的 id，再从存储中读取待办事项
+    private void handleSearch(RoutingContext context) {
+        final String query = context.request().getParam("q");
+        final int limit;
+        try {
+            String limitParam = context.request().getParam("limit");
+            limit = limitParam == null ? SEARCH_DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(400).end();
+            return;
+        }
+        if (query == null || limit <= 0 || limit > SEARCH_MAX_LIMIT) {
+            context.response().setStatusCode(400).end();  // 400 客户端请求的语法错误，服务器无法理解
+            return;
+        }
+        final String listId = listId(context);
+        timed(context, searchIndex.search(listId, query, limit).compose(ids -> {
+            @SuppressWarnings("rawtypes")   // Vert.x 3.6 的 CompositeFuture.all 只接受 List<Future>
+            List<Future> todos = new ArrayList<>(ids.size());
+            for (Integer id : ids) todos.add(service.getCertain(listId, String.valueOf(id)));
+            return CompositeFuture.all(todos).map(all -> {
+                List<Todo> result = new ArrayList<>(ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    Optional<Todo> todo = all.resultAt(i);
+                    todo.ifPresent(result::add);    // 索引与存储之间的短暂不一致：已被删除的待办事项直接跳过
+                }
+                return result;
+            });
+        })).setHandler(resultHandler(context, res -> {
+            final String encoded = encode(wrapObjects(res, context));
+            context.response()
+                    .putHeader("content-type", "application/json")
+                    .end(encoded);
+        }));
+    }
+
+    // 10.移动待办事项：放到 after 之后、before 之前（客户端看到的相邻待办事项），只改写被移动的这一个待办事项的 rank
+    private void handleMoveTodo(RoutingContext context) {
+        final String todoId = context.request().getParam("todoId");
+        final String afterId = emptyToNull(context.request().getParam("after"));
+        final String beforeId = emptyToNull(context.request().getParam("before"));
+        if ((afterId == null && beforeId == null) || todoId.equals(afterId) || todoId.equals(beforeId)) {
+            context.response().setStatusCode(400).end();    // 至少需要一个相邻的待办事项，且不能是它自己
+            return;
+        }
+        final Integer expectedVersion;
+        try {
+            expectedVersion = expectedVersion(context);
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(412).end();
+            return;
+        }
+        timed(context, reorderer.move(listId(context), todoId, afterId, beforeId, expectedVersion)).setHandler(ar -> {
+            if (ar.failed() && ar.cause() instanceof IllegalStateException) {
+                context.response().setStatusCode(409).end();    // 相邻的待办事项已被删除或顺序已变化，客户端刷新后重试
+            } else if (ar.failed()) {
+                conflictOrUnavailable(context, ar.cause(), expectedVersion);
+            } else if (ar.result() == null) {
+                context.response().setStatusCode(404).end();
+            } else {
+                context.response()
+                        .putHeader("content-type", "application/json")
+                        .putHeader("ETag", etag(ar.result()))
+                        .end(encode(wrapObject(ar.result(), context)));
+            }
+        });
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private Future<Void> flushImport(String listId, List<Todo> batch, int[] imported) {
+        if (batch.isEmpty()) return Future.succeededFuture();
+        List<Todo> todos = new ArrayList<>(batch);
+        batch.clear();
+        return service.insertBatch(listId, todos).map(n -> {
+            imported[0] += n;
+            return null;
+        });
+    }
+
+    // 对于没有ID（或者为默认ID）的待办事项，我们会给它分配一个ID。这里我们采用了自增ID的策略，通过AtomicInteger来实现。
+    private void assignId(Todo todo) {
         int id = todo.getId();
         if (id > Todo.getIncId()) Todo.setIncIdWith(id);
-        else if (id == 0) todo.setIncId();   // 对于没有ID（或者为默认ID）的待办事项，我们会给它分配一个ID。这里我们采用了自增ID的策略，通过AtomicInteger来实现。
-        todo.setUrl(context.request().absoluteURI() + "/" + todo.getId());
+        else if (id == 0) todo.setIncId();
+    }
+
+    // 待办事项的版本号作为 ETag，客户端修改或删除时通过 If-Match 带回
+    private String etag(Todo todo) {
+        return "\"" + todo.getVersion() + "\"";
+    }
+
+    // 解析 If-Match 请求头中的版本号：未携带或为 * 时不限定版本；无法解析时抛出 NumberFormatException
+    private Integer expectedVersion(RoutingContext context) {
+        String ifMatch = context.request().getHeader("If-Match");
+        if (ifMatch == null || ifMatch.trim().equals("*")) return null;
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        return Integer.parseInt(tag.replace("\"", ""));
+    }
+
+    // 版本冲突：客户端通过 If-Match 指定了版本时返回 412 Precondition Failed，
+    // 否则（服务内部重试多次仍冲突）返回 409 Conflict；其他失败照常返回 503
+    private void conflictOrUnavailable(RoutingContext context, Throwable cause, Integer expectedVersion) {
+        if (!(cause instanceof VersionConflictException)) context.response().setStatusCode(503).end();
+        else context.response().setStatusCode(expectedVersion != null ? 412 : 409).end();
+    }
+
+    // url 不再存储，而是在响应时根据请求推导：<scheme>://<host>[/lists/:listId]/todos/:todoId
+    private Todo wrapObject(Todo todo, RoutingContext context) {
+        todo.setUrl(urlPrefix(context) + todo.getId());
         return todo;
     }
+
+    private List<Todo> wrapObjects(List<Todo> todos, RoutingContext context) {
+        final String prefix = urlPrefix(context);
+        for (Todo todo : todos) todo.setUrl(prefix + todo.getId());
+        return todos;
+    }
+
+    private String urlPrefix(RoutingContext context) {
+        final String absolute = context.request().absoluteURI();
+        final int path = absolute.indexOf('/', absolute.indexOf("://") + 3);
+        final String origin = path < 0 ? absolute : absolute.substring(0, path);
+        final String listId = context.request().getParam("listId");
+        return origin + (listId == null ? "/todos/" : "/lists/" + listId + "/todos/");
+    }
 }
@@ -0,0 +1,95 @@
+package com.csranger.todolist.limit;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    // 测试突发额度用完之后拒绝并返回需要等待的时间，等待之后恢复
+    @Test
+    public void testBurstThenWait() {
+        RateLimiter limiter = new RateLimiter(2, 3, null, 1);
+        final long now = 0;
+        for (int i = 0; i < 3; i++) Assert.assertEquals(0, limiter.acquire(null, "10.0.0.1", now));
+        Assert.assertEquals(SECOND / 2, limiter.acquire(null, "10.0.0.1", now));
+        Assert.assertEquals(0, limiter.acquire(null, "10.0.0.2", now));
+        Assert.assertEquals(0, limiter.acquire(null, "10.0.0.1", now + SECOND / 2));
+        Assert.assertTrue(limiter.acquire(null, "10.0.0.1", now + SECOND / 2) > 0);
+    }
+
+    // 测试不同的 key 各自限流，但不断更换 key 也无法超出所在 IP 的额度
+    @Test
+    public void testKeysLimitedByIp() {
+        RateLimiter limiter = new RateLimiter(1, 2, "X-API-Key", 2);
+        final long now = 0;
+        Assert.assertEquals(0, limiter.acquire("a", "10.0.0.1", now));
+        Assert.assertEquals(0, limiter.acquire("a", "10.0.0.1", now));
+        Assert.assertTrue(limiter.acquire("a", "10.0.0.1", now) > 0);
+        Assert.assertEquals(0, limiter.acquire("b", "10.0.0.1", now));
+        Assert.assertEquals(0, limiter.acquire("b", "10.0.0.1", now));
+        for (int i = 0; i < 10; i++) Assert.assertTrue(limiter.acquire("key-" + i, "10.0.0.1", now) > 0);
+        Assert.assertEquals(0, limiter.acquire("c", "10.0.0.2", now));
+    }
+
+    // 测试被 IP 拒绝的请求不为 key 创建桶：不断更换 key 时桶的数量保持不变，空闲之后全部清理
+    @Test
+    public void testRejectedKeysCreateNoBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 2, "X-API-Key", 2);
+        final long now = 0;
+        for (int i = 0; i < 4; i++) Assert.assertEquals(0, limiter.acquire("a" + i, "10.0.0.1", now));
+        final int buckets = limiter.buckets();
+        Assert.assertEquals(5, buckets);
+        for (int i = 0; i < 1000; i++) Assert.assertTrue(limiter.acquire("key-" + i, "10.0.0.1", now) > 0);
+        Assert.assertEquals(buckets, limiter.buckets());
+        limiter.evictIdle(now + 10 * SECOND);
+        Assert.assertEquals(0, limiter.buckets());
+    }
+
+    // 测试同一个 Vertx 实例中多次安装相同的配置（多个 Verticle 实例）共用同一个限流器
+    @Test
+    public void testSharedPerVertx() {
+        JsonObject config = new JsonObject()
+                .put("routes", new JsonObject().put("POST /todos", new JsonObject().put("rate", 1).put("burst", 1)))
+                .put("default", new JsonObject().put("rate", 10).put("burst", 10));
+        RateLimiter.install(vertx, Router.router(vertx), config);
+        RateLimiter.install(vertx, Router.router(vertx), config);
+        Assert.assertEquals(2, vertx.sharedData().getLocalMap("rateLimiter").size());
+        RateLimiter.install(vertx, Router.router(vertx), config.copy().put("key.header", "X-API-Key"));
+        Assert.assertEquals(4, vertx.sharedData().getLocalMap("rateLimiter").size());
+    }
+
+    // 测试 Retry-After 向上取整到秒且至少为 1
+    @Test
+    public void testRetryAfterSeconds() {
+        Assert.assertEquals(1, RateLimiter.retryAfterSeconds(1));
+        Assert.assertEquals(1, RateLimiter.retryAfterSeconds(SECOND));
+        Assert.assertEquals(2, RateLimiter.retryAfterSeconds(SECOND + 1));
+    }
+
+    // 测试非法的限制在创建时就被拒绝
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new RateLimiter(0, 1, null, 1);
+    }
+}
@@ -0,0 +1,85 @@
+package com.csranger.todolist.log;
+
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class AccessLogTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static boolean append(AccessLog log) {
+        return log.append(HttpMethod.GET, "/todos", 200, 1000000, 500000, 10);
+    }
+
+    // 测试缓冲区满时丢弃并计数，写线程取走之后可以继续写入
+    @Test
+    public void testDropsWhenBufferFull() throws Exception {
+        File file = new File(folder.getRoot(), "access.log");
+        AccessLog log = new AccessLog(file, 4, 1024 * 1024, 2, false);
+        for (int i = 0; i < 4; i++) Assert.assertTrue(append(log));
+        Assert.assertFalse(append(log));
+        Assert.assertEquals(1, log.dropped());
+        Assert.assertEquals(4, log.flush());
+        Assert.assertTrue(append(log));
+        Assert.assertEquals(1, log.flush());
+        Assert.assertEquals(5, Files.readAllLines(file.toPath()).size());
+        Assert.assertEquals(1, log.dropped());
+    }
+
+    // 测试文件超过 maxBytes 时轮转，至多保留 maxFiles 个文件
+    @Test
+    public void testRotation() throws Exception {
+        File file = new File(folder.getRoot(), "access.log");
+        AccessLog log = new AccessLog(file, 4, 300, 3, false);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(append(log));
+            Assert.assertEquals(1, log.flush());
+        }
+        Assert.assertTrue(new File(file.getPath() + ".1").exists());
+        Assert.assertTrue(new File(file.getPath() + ".2").exists());
+        Assert.assertFalse(new File(file.getPath() + ".3").exists());
+        for (String name : new String[]{"", ".1", ".2"}) {
+            Assert.assertTrue(new File(file.getPath() + name).length() <= 300);
+        }
+    }
+
+    // 测试写入失败时丢弃这一批，问题消除后重新打开文件继续写入
+    @Test
+    public void testRecoversFromWriteFailure() throws Exception {
+        File blocker = folder.newFile("logs");        // 日志目录的位置被一个普通文件占用，无法创建目录
+        File file = new File(blocker, "access.log");
+        AccessLog log = new AccessLog(file, 4, 1024 * 1024, 2, false);
+        Assert.assertTrue(append(log));
+        Assert.assertEquals(-1, log.flush());
+        Assert.assertEquals(1, log.dropped());
+        Assert.assertTrue(blocker.delete());
+        Assert.assertTrue(append(log));
+        Assert.assertEquals(1, log.flush());
+        Assert.assertEquals(1, Files.readAllLines(file.toPath()).size());
+    }
+
+    // 测试同一个文件共享一个实例，最后一个使用者关闭时才停止写线程
+    @Test
+    public void testSharedPerFile() throws Exception {
+        File file = new File(folder.getRoot(), "shared.log");
+        JsonObject config = new JsonObject().put("access.log.file", file.getPath());
+        AccessLog first = AccessLog.create(config);
+        AccessLog second = AccessLog.create(config.copy().put("access.log.file", folder.getRoot() + "/./shared.log"));
+        Assert.assertSame(first, second);
+        first.close();
+        Assert.assertTrue(append(second));
+        second.close();
+        Assert.assertEquals(1, Files.readAllLines(file.toPath()).size());
+        AccessLog third = AccessLog.create(config);
+        Assert.assertNotSame(first, third);
+        third.close();
+    }
+}
@@ -0,0 +1,56 @@
+package com.csranger.todolist.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TitleIndexTest {
+
+    // 测试大量待办事项的写入、改写与删除（覆盖 id 表的扩容、缩容与后移删除），词项随最后一个待办事项一起删除
+    @Test
+    public void testPutAndRemove() {
+        TitleIndex index = new TitleIndex();
+        Set<Integer> expected = new HashSet<>();
+        for (int id = -50; id < 5000; id++) {
+            index.put(id, "common item" + id);
+            expected.add(id);
+        }
+        for (int id = -50; id < 5000; id += 2) {
+            index.remove(id);
+            expected.remove(id);
+        }
+        for (int id = 1; id < 5000; id += 10) {
+            index.put(id, "renamed");
+            expected.remove(id);
+        }
+        Assert.assertEquals(expected, new HashSet<>(index.search("common", Integer.MAX_VALUE)));
+        Assert.assertEquals(Collections.emptyList(), index.search("item4998", 10));
+        Assert.assertEquals(Collections.singletonList(4999), index.search("item4999", 10));
+        Assert.assertEquals(500, index.search("renamed", Integer.MAX_VALUE).size());
+        for (int id = -50; id < 5000; id++) index.remove(id);
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(Collections.emptyList(), index.search("common", 10));
+    }
+
+    // 测试前缀匹配与中文二元组，没有标题的待办事项不占用索引
+    @Test
+    public void testSearch() {
+        TitleIndex index = new TitleIndex();
+        index.put(1, "Buy milk and bread");
+        index.put(2, "Buy milkshake");
+        index.put(3, "去超市买牛奶");
+        index.put(4, null);
+        List<Integer> milk = index.search("milk", 10);
+        Assert.assertEquals(Arrays.asList(1, 2), milk);
+        Assert.assertEquals(Collections.singletonList(3), index.search("牛奶", 10));
+        index.remove(1);
+        index.remove(2);
+        index.remove(3);
+        Assert.assertTrue(index.isEmpty());
+    }
+}
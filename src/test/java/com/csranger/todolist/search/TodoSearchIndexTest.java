@@ -0,0 +1,57 @@
+package com.csranger.todolist.search;
+
+import com.csranger.todolist.entity.Todo;
+import com.csranger.todolist.service.TodoService;
+import io.vertx.core.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+public class TodoSearchIndexTest {
+
+    // 只实现 scan 的存储：清单 id 以 "full" 开头的清单有一个待办事项，其余清单为空
+    @SuppressWarnings("unchecked")
+    private static TodoService source() {
+        return (TodoService) Proxy.newProxyInstance(TodoService.class.getClassLoader(), new Class<?>[]{TodoService.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("scan")) throw new UnsupportedOperationException(method.getName());
+                    String listId = (String) args[0];
+                    if (!listId.startsWith("full")) return Future.succeededFuture();
+                    Todo todo = new Todo(1, "Search " + listId, false, 1, null);
+                    return ((Function<List<Todo>, Future<Void>>) args[2]).apply(Collections.singletonList(todo));
+                });
+    }
+
+    // 测试搜索空清单（包括不存在的清单）不保留索引
+    @Test
+    public void testEmptyListsNotKept() {
+        TodoSearchIndex index = new TodoSearchIndex(source(), 10);
+        for (int i = 0; i < 100; i++) {
+            Future<List<Integer>> result = index.search("random" + i, "search", 10);
+            Assert.assertTrue(result.succeeded());
+            Assert.assertTrue(result.result().isEmpty());
+        }
+        Assert.assertEquals(0, index.size());
+        index.put("random0", new Todo(2, "ignored", false, 1, null));     // 没有索引的清单在下次搜索时重新构建
+        Assert.assertEquals(0, index.size());
+    }
+
+    // 测试至多保留 maxLists 个清单的索引，淘汰最久未使用的；删除最后一个待办事项后丢弃索引
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        TodoSearchIndex index = new TodoSearchIndex(source(), 2);
+        Assert.assertEquals(Collections.singletonList(1), index.search("fullA", "fulla", 10).result());
+        index.search("fullB", "fullb", 10);
+        index.search("fullA", "fulla", 10);         // A 比 B 更近使用过
+        index.search("fullC", "fullc", 10);         // 淘汰 B
+        Assert.assertEquals(2, index.size());
+        index.remove("fullA", 1);
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(Collections.singletonList(1), index.search("fullB", "fullb", 10).result());
+        Assert.assertEquals(2, index.size());
+    }
+}
@@ -0,0 +1,102 @@
+package com.csranger.todolist.service;
+
+import com.csranger.todolist.entity.Todo;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 JdbcTodoService（JDBCClient + worker 线程池）与 VirtualThreadJdbcTodoService（虚拟线程）在高并发下的吞吐与延迟。
+ * 不是单元测试，需要可用的数据库，手动运行：
+ * java -cp ... com.csranger.todolist.service.JdbcBackendBenchmark config/config_jdbc.json [并发数] [请求总数]
+ * 使用配置文件中的数据库（例如 config/config_jdbc.json 中的 MySQL），除 build.gradle 中已声明的驱动外不需要其他依赖；
+ * 内存数据库（H2）没有网络往返，测不出驱动的锁与线程模型的差别，结果没有参考意义。
+ * 虚拟线程版本需要在 Java 21+ 上运行才有意义，且驱动不能在 synchronized 块中阻塞（见 VirtualThreadJdbcTodoService）。
+ * 负载为 90% 按 id 读取、10% 更新，数据写在独立的 bench 清单中。
+ */
+public class JdbcBackendBenchmark {
+
+    private static final String LIST_ID = "bench";
+    private static final int TODOS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        JsonObject config = new JsonObject(new String(Files.readAllBytes(Paths.get(args[0])), "UTF-8"));
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            run(vertx, "jdbc", new JdbcTodoService(vertx, config), concurrency, requests);
+            run(vertx, "jdbc-vt", new VirtualThreadJdbcTodoService(vertx, config), concurrency, requests);
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private static void run(Vertx vertx, String name, TodoService service, int concurrency, int requests)
+            throws Exception {
+        CompletableFuture<String> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> service.initData()
+                .compose(r -> service.deleteAll(LIST_ID))
+                .compose(r -> {
+                    List<Todo> todos = new ArrayList<>(TODOS);
+                    for (int i = 1; i <= TODOS; i++) {
+                        todos.add(new Todo(900000 + i, "Benchmark todo " + i, false, i, null));
+                    }
+                    return service.insertBatch(LIST_ID, todos);
+                })
+                .compose(n -> load(service, concurrency, Math.min(requests, 5000)))       // 预热
+                .compose(w -> load(service, concurrency, requests))
+                .compose(report -> service.close().map(report))
+                .setHandler(ar -> {
+                    if (ar.succeeded()) done.complete(ar.result());
+                    else done.completeExceptionally(ar.cause());
+                }));
+        System.out.println(name + " (concurrency=" + concurrency + "): " + done.get(10, TimeUnit.MINUTES));
+    }
+
+    // 保持 concurrency 个请求同时在途，直到完成 requests 个请求
+    private static Future<String> load(TodoService service, int concurrency, int requests) {
+        Future<String> result = Future.future();
+        long[] latencies = new long[requests];
+        int[] state = {0, 0, 0};     // 已发出、已完成、失败数
+        long start = System.nanoTime();
+        Runnable[] next = new Runnable[1];
+        next[0] = () -> {
+            if (state[0] >= requests) return;
+            int n = state[0]++;
+            String id = String.valueOf(900000 + 1 + n % TODOS);
+            long issued = System.nanoTime();
+            Future<?> op = n % 10 == 0
+                    ? service.update(LIST_ID, id, new Todo(0, "Updated " + n, null, null, null), null)
+                    : service.getCertain(LIST_ID, id);
+            op.setHandler(ar -> {
+                latencies[n] = System.nanoTime() - issued;
+                if (ar.failed()) state[2]++;
+                if (++state[1] == requests) result.complete(report(latencies, System.nanoTime() - start, state[2]));
+                else next[0].run();
+            });
+        };
+        for (int i = 0; i < Math.min(concurrency, requests); i++) next[0].run();
+        return result;
+    }
+
+    private static String report(long[] latencies, long elapsed, int failures) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return String.format("%.0f ops/s, p50=%.2fms p99=%.2fms max=%.2fms, failures=%d",
+                latencies.length / (elapsed / 1e9),
+                sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6,
+                failures);
+    }
+}
@@ -0,0 +1,92 @@
+package com.csranger.todolist.service;
+
+import com.csranger.todolist.entity.Todo;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比旧的存储格式（encodePrettily，带完整 url）与 RedisTodoService.encode 的紧凑格式在 Redis 中的内存占用。
+ * 不是单元测试，需要可用的 Redis，手动运行：
+ * java -cp ... com.csranger.todolist.service.RedisMemoryComparison [host] [port] [待办事项数]
+ * 两种格式分别写入独立的临时 hash，用 MEMORY USAGE 统计后删除。
+ */
+public class RedisMemoryComparison {
+
+    private static final String LEGACY_KEY = "todo:memory:legacy";
+    private static final String COMPACT_KEY = "todo:memory:compact";
+    private static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int todos = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+
+        Vertx vertx = Vertx.vertx();
+        RedisClient redis = RedisClient.create(vertx, new RedisOptions().setHost(host).setPort(port));
+        try {
+            long legacy = measure(vertx, redis, LEGACY_KEY, todos, true);
+            long compact = measure(vertx, redis, COMPACT_KEY, todos, false);
+            System.out.println(String.format("%d todos: legacy %d bytes (%.1f/todo), compact %d bytes (%.1f/todo), saved %.1f%%",
+                    todos, legacy, (double) legacy / todos, compact, (double) compact / todos,
+                    100.0 * (legacy - compact) / legacy));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private static long measure(Vertx vertx, RedisClient redis, String key, int todos, boolean legacy) throws Exception {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        vertx.runOnContext(v -> {
+            Future<Long> del = Future.future();
+            redis.del(key, del);
+            del.compose(r -> write(redis, key, todos, legacy, 1))
+                    .compose(r -> usage(redis, key))
+                    .compose(bytes -> {
+                        Future<Long> cleaned = Future.future();
+                        redis.del(key, cleaned);
+                        return cleaned.map(bytes);
+                    })
+                    .setHandler(ar -> {
+                        if (ar.succeeded()) done.complete(ar.result());
+                        else done.completeExceptionally(ar.cause());
+                    });
+        });
+        return done.get(30, TimeUnit.MINUTES);
+    }
+
+    // 按批写入，一批完成后再写下一批
+    private static Future<Void> write(RedisClient redis, String key, int todos, boolean legacy, int from) {
+        if (from > todos) return Future.succeededFuture();
+        JsonObject fields = new JsonObject();
+        int to = Math.min(todos, from + BATCH_SIZE - 1);
+        for (int id = from; id <= to; id++) {
+            Todo todo = new Todo(id, "Something to do " + id, id % 3 == 0, id, null);
+            todo.setVersion(1);
+            if (legacy) {
+                todo.setUrl("http://localhost:8082/todos/" + id);
+                fields.put(String.valueOf(id), Json.encodePrettily(todo));
+            } else {
+                fields.put(String.valueOf(id), RedisTodoService.encode(todo));
+            }
+        }
+        Future<String> batch = Future.future();
+        redis.hmset(key, fields, batch);
+        return batch.compose(r -> write(redis, key, todos, legacy, to + 1));
+    }
+
+    private static Future<Long> usage(RedisClient redis, String key) {
+        Future<JsonArray> result = Future.future();
+        redis.eval("return {redis.call('MEMORY', 'USAGE', KEYS[1], 'SAMPLES', '0')}",
+                Collections.singletonList(key), Collections.emptyList(), result);
+        return result.map(r -> r.getLong(0));
+    }
+}
@@ -0,0 +1,116 @@
+package com.csranger.todolist.trace;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class TraceCollectorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    private static Trace finished(boolean sampled, long durationMs) {
+        Trace trace = new Trace(sampled);
+        trace.span("redis", "VERT_TODO:default", trace.startNanos(), trace.startNanos() + 1000);
+        trace.finish("GET", "/todos", 200, trace.startNanos() + TimeUnit.MILLISECONDS.toNanos(durationMs));
+        return trace;
+    }
+
+    // 测试采样率为 1 时总是采样，为 0 时从不采样
+    @Test
+    public void testSampling() {
+        TraceCollector all = new TraceCollector(vertx, new JsonObject().put("trace.sample-rate", 1.0));
+        TraceCollector none = new TraceCollector(vertx, new JsonObject().put("trace.sample-rate", 0.0));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(all.sample());
+            Assert.assertFalse(none.sample());
+        }
+    }
+
+    // 测试未被采样的请求只有超过 trace.slow-ms 时才保留
+    @Test
+    public void testKeepsSlowRequests() {
+        TraceCollector collector = new TraceCollector(vertx, new JsonObject().put("trace.slow-ms", 100));
+        Assert.assertFalse(collector.record(finished(false, 10)));
+        Assert.assertTrue(collector.record(finished(false, 150)));
+        Assert.assertTrue(collector.record(finished(true, 10)));
+        Assert.assertEquals(2, collector.query(10, 0).size());
+        Assert.assertEquals(1, collector.query(10, TimeUnit.MILLISECONDS.toNanos(100)).size());
+    }
+
+    // 测试查询结果按时间倒序，环形缓冲区满时覆盖最旧的 trace，以及返回的格式
+    @Test
+    public void testQuery() {
+        TraceCollector collector = new TraceCollector(vertx, new JsonObject()
+                .put("trace.sample-rate", 1.0).put("trace.buffer-size", 2));
+        for (long ms = 1; ms <= 3; ms++) collector.record(finished(true, ms));
+        JsonArray traces = collector.query(10, 0);
+        Assert.assertEquals(2, traces.size());
+        Assert.assertEquals(3000L, (long) traces.getJsonObject(0).getLong("duration_us"));
+        Assert.assertEquals(2000L, (long) traces.getJsonObject(1).getLong("duration_us"));
+        Assert.assertEquals(1, collector.query(1, 0).size());
+
+        JsonObject trace = traces.getJsonObject(0);
+        Assert.assertEquals("GET /todos", trace.getString("name"));
+        Assert.assertEquals(200, (int) trace.getInteger("status"));
+        Assert.assertEquals(16, trace.getString("traceId").length());
+        JsonObject span = trace.getJsonArray("spans").getJsonObject(0);
+        Assert.assertEquals("redis", span.getString("name"));
+        Assert.assertEquals("VERT_TODO:default", span.getString("detail"));
+        Assert.assertEquals(1L, (long) span.getLong("duration_us"));
+    }
+
+    // 测试 /debug/traces 只对本机开放
+    @Test
+    public void testLoopbackOnly() {
+        Assert.assertTrue(TraceCollector.isLoopback("127.0.0.1"));
+        Assert.assertTrue(TraceCollector.isLoopback("0:0:0:0:0:0:0:1"));
+        Assert.assertFalse(TraceCollector.isLoopback("10.0.0.1"));
+        Assert.assertFalse(TraceCollector.isLoopback(null));
+    }
+
+    // 测试导出文件超过 trace.file.max-bytes 时轮转，至多保留 trace.file.max-files 个文件
+    @Test
+    public void testExportRotation() throws Exception {
+        File file = new File(folder.getRoot(), "trace.json");
+        TraceCollector collector = new TraceCollector(vertx, new JsonObject().put("trace.slow-ms", 100)
+                .put("trace.file", file.getPath()).put("trace.file.max-bytes", 2048).put("trace.file.max-files", 3));
+        byte[] line = (finished(true, 1).toZipkin("todolist").encode() + "\n").getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(line.length <= 2048);
+        for (int i = 0; i < 3 * 2048 / line.length + 3; i++) collector.write(line);
+        Assert.assertTrue(new File(file.getPath() + ".1").exists());
+        Assert.assertTrue(new File(file.getPath() + ".2").exists());
+        Assert.assertFalse(new File(file.getPath() + ".3").exists());
+        for (String name : new String[]{"", ".1", ".2"}) {
+            Assert.assertTrue(new File(file.getPath() + name).length() <= 2048);
+        }
+    }
+
+    // 测试非法的缓冲区大小在创建时就被拒绝
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        new TraceCollector(vertx, new JsonObject().put("trace.slow-ms", 100).put("trace.buffer-size", 0));
+    }
+}
@@ -1,22 +1,28 @@
 package com.csranger.todolist.verticles;
 
+import com.csranger.todolist.Constants;
 import com.csranger.todolist.entity.Todo;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.redis.RedisClient;
+import io.vertx.redis.RedisOptions;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
+
 @RunWith(VertxUnitRunner.class)
 public class TodoVerticleTest {
 
@@ -93,4 +99,402 @@ public class TodoVerticleTest {
         })).putHeader("content-type", "application/json").end(Json.encodePrettily(todo));
     }
 
-}
\ No newline at end of file
+    // 测试不同清单之间的数据隔离：清空一个清单不影响其他清单
+    @Test(timeout = 3000L)
+    public void testListIsolation(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        Todo todo = new Todo(165, "List case...", false, 1, "/165");
+        httpClient.post(PORT, "localhost", "/lists/work/todos", created -> {
+            context.assertEquals(201, created.statusCode());
+            httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/home/todos", cleared -> {
+                context.assertEquals(204, cleared.statusCode());
+                httpClient.getNow(PORT, "localhost", "/lists/work/todos/165", response -> {
+                    context.assertEquals(200, response.statusCode());
+                    httpClient.getNow(PORT, "localhost", "/lists/home/todos/165", missing -> {
+                        context.assertEquals(404, missing.statusCode());
+                        httpClient.close();
+                        async.complete();
+                    });
+                });
+            }).end();
+        }).putHeader("content-type", "application/json").end(Json.encodePrettily(todo));
+    }
+
+    // 测试清单 id 的长度限制：超过 list_id 列宽度的清单 id 返回 400
+    @Test(timeout = 3000L)
+    public void testListIdTooLong(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String longest = String.join("", Collections.nCopies(Constants.MAX_LIST_ID_LENGTH, "l"));
+        httpClient.getNow(PORT, "localhost", "/lists/" + longest + "/todos", ok -> {
+            context.assertEquals(200, ok.statusCode());
+            httpClient.getNow(PORT, "localhost", "/lists/" + longest + "l/todos", rejected -> {
+                context.assertEquals(400, rejected.statusCode());
+                httpClient.close();
+                async.complete();
+            });
+        });
+    }
+
+    // 测试 NDJSON 导入后再导出，内容保持一致
+    @Test(timeout = 3000L)
+    public void testImportAndExport(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String ndjson = new Todo(171, "Import case...", false, 1, "/171").toJson().encode() + "\n" +
+                new Todo(172, "Import case...", true, 2, "/172").toJson().encode() + "\n";
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/backup/todos", cleared ->
+                httpClient.post(PORT, "localhost", "/lists/backup/todos/_import", imported -> imported.bodyHandler(body -> {
+                    context.assertEquals(2, body.toJsonObject().getInteger("imported"));
+                    httpClient.getNow(PORT, "localhost", "/lists/backup/todos/_export", exported -> exported.bodyHandler(lines -> {
+                        context.assertEquals(2, lines.toString().split("\n").length);
+                        httpClient.close();
+                        async.complete();
+                    }));
+                })).end(ndjson)
+        ).end();
+    }
+
+    // 测试导入时不同清单中相同的 id 互不覆盖
+    @Test(timeout = 3000L)
+    public void testImportSameIdInTwoLists(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String first = new Todo(173, "Import list A", false, 1, "/173").toJson().encode() + "\n";
+        String second = new Todo(173, "Import list B", false, 1, "/173").toJson().encode() + "\n";
+        httpClient.post(PORT, "localhost", "/lists/importA/todos/_import", importedA -> {
+            context.assertEquals(200, importedA.statusCode());
+            httpClient.post(PORT, "localhost", "/lists/importB/todos/_import", importedB -> {
+                context.assertEquals(200, importedB.statusCode());
+                httpClient.getNow(PORT, "localhost", "/lists/importA/todos/173", response -> response.bodyHandler(body -> {
+                    context.assertEquals("Import list A", body.toJsonObject().getString("title"));
+                    httpClient.getNow(PORT, "localhost", "/lists/importB/todos/173", other -> other.bodyHandler(otherBody -> {
+                        context.assertEquals("Import list B", otherBody.toJsonObject().getString("title"));
+                        httpClient.close();
+                        async.complete();
+                    }));
+                }));
+            }).end(second);
+        }).end(first);
+    }
+
+    // 测试导入时最后一行没有换行符：这一行也要导入，不能被丢弃
+    @Test(timeout = 3000L)
+    public void testImportWithoutTrailingNewline(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String ndjson = new Todo(301, "Import first", false, 1, "/301").toJson().encode() + "\n"
+                + new Todo(302, "Import last", false, 2, "/302").toJson().encode();
+        httpClient.post(PORT, "localhost", "/lists/noNewline/todos/_import", imported -> imported.bodyHandler(result -> {
+            context.assertEquals(200, imported.statusCode());
+            context.assertEquals(2, result.toJsonObject().getInteger("imported"));
+            httpClient.getNow(PORT, "localhost", "/lists/noNewline/todos/302", response -> response.bodyHandler(body -> {
+                context.assertEquals("Import last", body.toJsonObject().getString("title"));
+                httpClient.close();
+                async.complete();
+            }));
+        })).end(ndjson);
+    }
+
+    // 测试按标题全文搜索：前缀匹配，且搜索范围限定在清单内
+    @Test(timeout = 3000L)
+    public void testSearchTodo(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        Todo todo = new Todo(181, "Search case milkshake", false, 1, "/181");
+        httpClient.post(PORT, "localhost", "/lists/search/todos", created -> {
+            context.assertEquals(201, created.statusCode());
+            httpClient.getNow(PORT, "localhost", "/lists/search/todos/search?q=milk", response -> response.bodyHandler(body -> {
+                context.assertEquals(181, body.toJsonArray().getJsonObject(0).getInteger("id"));
+                httpClient.getNow(PORT, "localhost", "/lists/other/todos/search?q=milk", other -> other.bodyHandler(empty -> {
+                    context.assertTrue(empty.toJsonArray().isEmpty());
+                    httpClient.close();
+                    async.complete();
+                }));
+            }));
+        }).putHeader("content-type", "application/json").end(Json.encodePrettily(todo));
+    }
+
+    // 测试乐观并发控制：If-Match 与当前版本一致时更新成功并返回新的 ETag，使用过期的 ETag 返回 412
+    @Test(timeout = 3000L)
+    public void testIfMatchUpdate(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        Todo todo = new Todo(191, "Version case...", false, 1, "/191");
+        httpClient.post(PORT, "localhost", "/lists/occ/todos", created -> {
+            String etag = created.getHeader("ETag");
+            context.assertEquals("\"1\"", etag);
+            httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/lists/occ/todos/191", updated -> {
+                context.assertEquals(200, updated.statusCode());
+                context.assertEquals("\"2\"", updated.getHeader("ETag"));
+                httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/lists/occ/todos/191", stale -> {
+                    context.assertEquals(412, stale.statusCode());
+                    httpClient.close();
+                    async.complete();
+                }).putHeader("If-Match", etag).end("{\"title\":\"Stale update\"}");
+            }).putHeader("If-Match", etag).end("{\"completed\":true}");
+        }).putHeader("content-type", "application/json").end(Json.encodePrettily(todo));
+    }
+
+    // 测试移动待办事项：移动后列表按新的顺序返回
+    @Test(timeout = 3000L)
+    public void testMoveTodo(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/move/todos", cleared -> {
+            String ndjson = new Todo(211, "Move case...", false, 1, "/211").toJson().encode() + "\n" +
+                    new Todo(212, "Move case...", false, 2, "/212").toJson().encode() + "\n" +
+                    new Todo(213, "Move case...", false, 3, "/213").toJson().encode() + "\n";
+            httpClient.post(PORT, "localhost", "/lists/move/todos/_import", imported -> imported.bodyHandler(body ->
+                    httpClient.post(PORT, "localhost", "/lists/move/todos/213/move?after=211&before=212", moved -> {
+                        context.assertEquals(200, moved.statusCode());
+                        httpClient.getNow(PORT, "localhost", "/lists/move/todos", response -> response.bodyHandler(list -> {
+                            context.assertEquals(213, list.toJsonArray().getJsonObject(1).getInteger("id"));
+                            context.assertEquals(212, list.toJsonArray().getJsonObject(2).getInteger("id"));
+                            httpClient.close();
+                            async.complete();
+                        }));
+                    }).end())).end(ndjson);
+        }).end();
+    }
+
+    // 测试新建的待办事项总是排在最后（在所有已有的排序键之后），忽略客户端提供的排序键，响应中也没有内部的默认排序键；
+    // 导入不合法的排序键返回 400
+    @Test(timeout = 3000L)
+    public void testCreateSortsLast(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        Todo ranked = new Todo(253, "Rank case...", false, 1, "/253");
+        ranked.setRank("y" + String.join("", Collections.nCopies(25, "0")));     // 很大的排序键
+        String ndjson = ranked.toJson().encode() + "\n" +
+                new Todo(254, "Rank case...", false, 2, "/254").toJson().encode() + "\n";
+        Todo todo = new Todo(0, "Rank case...", false, 3, null);     // id 由服务分配
+        todo.setRank("a0");
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/ranked/todos", cleared ->
+                httpClient.post(PORT, "localhost", "/lists/ranked/todos/_import", imported -> imported.bodyHandler(body ->
+                        httpClient.post(PORT, "localhost", "/lists/ranked/todos", created -> created.bodyHandler(createdBody -> {
+                            context.assertEquals(201, created.statusCode());
+                            httpClient.getNow(PORT, "localhost", "/lists/ranked/todos", response -> response.bodyHandler(list -> {
+                                context.assertEquals(253, list.toJsonArray().getJsonObject(0).getInteger("id"));
+                                context.assertEquals(254, list.toJsonArray().getJsonObject(1).getInteger("id"));
+                                context.assertEquals(createdBody.toJsonObject().getInteger("id"), list.toJsonArray().getJsonObject(2).getInteger("id"));
+                                context.assertNull(list.toJsonArray().getJsonObject(2).getString("rank"));
+                                context.assertNull(createdBody.toJsonObject().getString("rank"));
+                                httpClient.post(PORT, "localhost", "/lists/ranked/todos/_import", rejected -> {
+                                    context.assertEquals(400, rejected.statusCode());
+                                    httpClient.close();
+                                    async.complete();
+                                }).end("{\"id\":255,\"rank\":\"a0!\"}\n");
+                            }));
+                        })).putHeader("content-type", "application/json").end(Json.encodePrettily(todo)))).end(ndjson)
+        ).end();
+    }
+
+    // 测试批量操作：清除已完成的待办事项，返回删除的条数
+    @Test(timeout = 3000L)
+    public void testClearCompleted(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String ndjson = new Todo(221, "Bulk case...", true, 1, "/221").toJson().encode() + "\n" +
+                new Todo(222, "Bulk case...", false, 2, "/222").toJson().encode() + "\n";
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/bulk/todos", cleared ->
+                httpClient.post(PORT, "localhost", "/lists/bulk/todos/_import", imported -> imported.bodyHandler(body ->
+                        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/bulk/todos?completed=true", deleted -> deleted.bodyHandler(result -> {
+                            context.assertEquals(1, result.toJsonObject().getInteger("affected"));
+                            httpClient.getNow(PORT, "localhost", "/lists/bulk/todos", response -> response.bodyHandler(list -> {
+                                context.assertEquals(222, list.toJsonArray().getJsonObject(0).getInteger("id"));
+                                httpClient.close();
+                                async.complete();
+                            }));
+                        })).end())).end(ndjson)
+        ).end();
+    }
+
+    // 测试清除已完成后搜索索引只移除被删除的待办事项
+    @Test(timeout = 3000L)
+    public void testClearCompletedUpdatesSearch(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String ndjson = new Todo(223, "Sweep done", true, 1, "/223").toJson().encode() + "\n" +
+                new Todo(224, "Sweep open", false, 2, "/224").toJson().encode() + "\n";
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/sweep/todos", cleared ->
+                httpClient.post(PORT, "localhost", "/lists/sweep/todos/_import", imported -> imported.bodyHandler(body ->
+                        httpClient.getNow(PORT, "localhost", "/lists/sweep/todos/search?q=sweep", before -> before.bodyHandler(found -> {
+                            context.assertEquals(2, found.toJsonArray().size());
+                            httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/sweep/todos?completed=true", deleted -> deleted.bodyHandler(result -> {
+                                context.assertEquals(1, result.toJsonObject().getInteger("affected"));
+                                httpClient.getNow(PORT, "localhost", "/lists/sweep/todos/search?q=sweep", after -> after.bodyHandler(left -> {
+                                    context.assertEquals(1, left.toJsonArray().size());
+                                    context.assertEquals(224, left.toJsonArray().getJsonObject(0).getInteger("id"));
+                                    httpClient.close();
+                                    async.complete();
+                                }));
+                            })).end();
+                        })))).end(ndjson)
+        ).end();
+    }
+
+    // 测试批量标记为完成：?completed=false 只修改未完成的待办事项，已经是目标值的不计入，版本号也不变
+    @Test(timeout = 3000L)
+    public void testSetCompletedWhere(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        String ndjson = new Todo(225, "Mark case...", true, 1, "/225").toJson().encode() + "\n" +
+                new Todo(226, "Mark case...", false, 2, "/226").toJson().encode() + "\n" +
+                new Todo(227, "Mark case...", false, 3, "/227").toJson().encode() + "\n";
+        String body = new JsonObject().put("completed", true).encode();
+        httpClient.request(HttpMethod.DELETE, PORT, "localhost", "/lists/mark/todos", cleared ->
+                httpClient.post(PORT, "localhost", "/lists/mark/todos/_import", imported -> imported.bodyHandler(ignored ->
+                        httpClient.getNow(PORT, "localhost", "/lists/mark/todos", before -> before.bodyHandler(original ->
+                                httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/lists/mark/todos?completed=false", marked -> marked.bodyHandler(result -> {
+                                    context.assertEquals(2, result.toJsonObject().getInteger("affected"));
+                                    httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/lists/mark/todos", again -> again.bodyHandler(repeated -> {
+                                        context.assertEquals(0, repeated.toJsonObject().getInteger("affected"));
+                                        httpClient.getNow(PORT, "localhost", "/lists/mark/todos", after -> after.bodyHandler(list -> {
+                                            JsonArray was = original.toJsonArray();
+                                            JsonArray now = list.toJsonArray();
+                                            context.assertEquals(3, now.size());
+                                            for (int i = 0; i < now.size(); i++) {
+                                                JsonObject todo = now.getJsonObject(i);
+                                                context.assertEquals(was.getJsonObject(i).getInteger("id"), todo.getInteger("id"));
+                                                context.assertTrue(todo.getBoolean("completed"));
+                                                int bump = todo.getInteger("id") == 225 ? 0 : 1;
+                                                context.assertEquals(was.getJsonObject(i).getInteger("version", 0) + bump, todo.getInteger("version", 0));
+                                            }
+                                            httpClient.close();
+                                            async.complete();
+                                        }));
+                                    })).end(body);
+                                })).end(body)
+                        )))).end(ndjson)
+        ).end();
+    }
+
+    // 测试旧格式（encodePrettily，带完整 url）的数据：读取时 url 由请求推导，下一次写入后转换为紧凑格式且不再存储 url
+    @Test(timeout = 3000L)
+    public void testLegacyRedisEntry(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        RedisClient redis = RedisClient.create(vertx, new RedisOptions());
+        Async async = context.async();
+        final String defaultKey = Constants.redisTodoKey(Constants.DEFAULT_LIST_ID);
+        final String listKey = Constants.redisTodoKey("legacy");
+        String first = new Todo(231, "Legacy case...", false, 1, "http://old-host:8080/todos/231").toJson().encodePrettily();
+        String second = new Todo(232, "Legacy case...", false, 2, "http://old-host:8080/lists/legacy/todos/232").toJson().encodePrettily();
+        String patch = new JsonObject().put("completed", true).encode();
+        redis.hset(defaultKey, "231", first, seeded -> redis.hset(listKey, "232", second, seededList ->
+                httpClient.getNow(PORT, "localhost", "/todos", all -> all.bodyHandler(todos -> {
+                    context.assertEquals("http://localhost:8082/todos/231", find(todos.toJsonArray(), 231).getString("url"));
+                    httpClient.getNow(PORT, "localhost", "/lists/legacy/todos", list -> list.bodyHandler(listTodos -> {
+                        context.assertEquals("http://localhost:8082/lists/legacy/todos/232", find(listTodos.toJsonArray(), 232).getString("url"));
+                        httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/todos/231", updated ->
+                                httpClient.request(HttpMethod.PATCH, PORT, "localhost", "/lists/legacy/todos/232", updatedList -> {
+                                    context.assertEquals(200, updated.statusCode());
+                                    context.assertEquals(200, updatedList.statusCode());
+                                    redis.hget(defaultKey, "231", stored -> redis.hget(listKey, "232", storedList -> {
+                                        for (String raw : new String[]{stored.result(), storedList.result()}) {
+                                            JsonObject json = new JsonObject(raw);
+                                            context.assertEquals(json.encode(), raw);
+                                            context.assertFalse(json.containsKey("url"));
+                                            context.assertTrue(json.getBoolean("completed"));
+                                        }
+                                        redis.close(closed -> {
+                                            httpClient.close();
+                                            async.complete();
+                                        });
+                                    }));
+                                }).end(patch)).end(patch);
+                    }));
+                }))));
+    }
+
+    private static JsonObject find(JsonArray todos, int id) {
+        for (int i = 0; i < todos.size(); i++) {
+            if (todos.getJsonObject(i).getInteger("id") == id) return todos.getJsonObject(i);
+        }
+        return null;
+    }
+
+    @Test(timeout = 3000L)
+    public void testHealth(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        httpClient.getNow(PORT, "localhost", "/health/live", live -> {
+            context.assertEquals(200, live.statusCode());
+            // 默认的 lazy 模式下存储在后台初始化，轮询直到就绪
+            vertx.setPeriodic(50, timer -> httpClient.getNow(PORT, "localhost", "/health/ready", ready -> {
+                if (ready.statusCode() != 200 || async.isCompleted()) return;
+                vertx.cancelTimer(timer);
+                httpClient.close();
+                async.complete();
+            }));
+        });
+    }
+
+    // 测试限流：预热请求不受限流影响（否则预热启动失败），超出突发额度的请求返回 429 与 Retry-After
+    @Test(timeout = 10000L)
+    public void testRateLimit(TestContext context) throws Exception {
+        Async async = context.async();
+        final JsonObject config = new JsonObject()
+                .put("http.port", PORT)
+                .put("startup.mode", "warm")
+                .put("startup.warmup.iterations", 2)
+                .put("rate.limit", new JsonObject().put("default", new JsonObject().put("rate", 0.5).put("burst", 2)));
+        vertx.undeploy(vertx.deploymentIDs().iterator().next(), context.asyncAssertSuccess(v ->
+                vertx.deployVerticle(new TodoVerticle(), new DeploymentOptions().setConfig(config), context.asyncAssertSuccess(id -> {
+                    HttpClient httpClient = vertx.createHttpClient();
+                    final String uri = "/lists/limited/todos";
+                    httpClient.getNow(PORT, "localhost", uri, first -> {
+                        context.assertEquals(200, first.statusCode());
+                        httpClient.getNow(PORT, "localhost", uri, second -> {
+                            context.assertEquals(200, second.statusCode());
+                            httpClient.getNow(PORT, "localhost", uri, third -> {
+                                context.assertEquals(429, third.statusCode());
+                                long retryAfter = Long.parseLong(third.getHeader("Retry-After"));
+                                context.assertTrue(retryAfter >= 1 && retryAfter <= 2);
+                                httpClient.close();
+                                async.complete();
+                            });
+                        });
+                    });
+                }))));
+    }
+
+    // 测试 /debug/traces：只在配置了 trace.debug-endpoint 时注册，返回保留的 trace
+    @Test(timeout = 5000L)
+    public void testDebugTraces(TestContext context) throws Exception {
+        Async async = context.async();
+        final JsonObject config = new JsonObject()
+                .put("http.port", PORT)
+                .put("trace.sample-rate", 1.0)
+                .put("trace.debug-endpoint", true);
+        vertx.undeploy(vertx.deploymentIDs().iterator().next(), context.asyncAssertSuccess(v ->
+                vertx.deployVerticle(new TodoVerticle(), new DeploymentOptions().setConfig(config), context.asyncAssertSuccess(id -> {
+                    HttpClient httpClient = vertx.createHttpClient();
+                    httpClient.getNow(PORT, "localhost", "/health/live", live ->
+                            httpClient.getNow(PORT, "localhost", "/debug/traces?limit=1", response -> {
+                                context.assertEquals(200, response.statusCode());
+                                response.bodyHandler(body -> {
+                                    JsonArray traces = new JsonArray(body.toString());
+                                    context.assertEquals(1, traces.size());
+                                    context.assertEquals("GET /health/live", traces.getJsonObject(0).getString("name"));
+                                    context.assertTrue(traces.getJsonObject(0).getBoolean("sampled"));
+                                    httpClient.close();
+                                    async.complete();
+                                });
+                            }));
+                }))));
+    }
+
+    // 测试没有配置 trace.debug-endpoint 时不注册 /debug/traces
+    @Test(timeout = 3000L)
+    public void testDebugTracesDisabled(TestContext context) throws Exception {
+        HttpClient httpClient = vertx.createHttpClient();
+        Async async = context.async();
+        httpClient.getNow(PORT, "localhost", "/debug/traces", response -> {
+            context.assertEquals(404, response.statusCode());
+            httpClient.close();
+            async.complete();
+        });
+    }
+}